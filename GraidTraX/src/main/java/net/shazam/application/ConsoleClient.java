@@ -10,6 +10,7 @@ import java.util.List;
 
 import net.shazam.backingbeans.GradesBean;
 import net.shazam.entities.StudentTest;
+import net.shazam.http.GradesHttpServer;
 
 /**
  * This class is in charge of our console client. It also serves as the entry point
@@ -27,16 +28,22 @@ public class ConsoleClient {
 	
 	/**
 	 * Entry point to our application. It fires up our console client
-	 * and does some clean up.
+	 * and does some clean up. Passing --http starts the HTTP server
+	 * instead of the console client.
 	 * @param args
 	 */
 	public static void main(String[] args) {
+		if(args.length > 0 && args[0].equals("--http")) {
+			GradesHttpServer.main(args);
+			return;
+		}
+		
 		//Start console client
 		ConsoleClient client = new ConsoleClient();
 		client.getCRUDOperationFromUser();
 		
-		//Be a good citizen: close the entity manager factory to recycle resources
-		GradesBean.shutdownEntityManagerFactory();
+		//Be a good citizen: close the grade store to recycle resources
+		GradesBean.shutdownStore();
 		try {
 			//Be a good citizen: close the buffered reader as it can lock files on OS
 			br.close();
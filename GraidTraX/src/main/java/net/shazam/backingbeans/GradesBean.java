@@ -1,31 +1,55 @@
 package net.shazam.backingbeans;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.math.BigDecimal;
-import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collection;
 import java.util.List;
-
-import javax.persistence.EntityManager;
-import javax.persistence.EntityManagerFactory;
-import javax.persistence.Persistence;
-import javax.persistence.TypedQuery;
-import javax.persistence.criteria.CriteriaBuilder;
-import javax.persistence.criteria.CriteriaQuery;
-import javax.persistence.criteria.Predicate;
-import javax.persistence.criteria.Root;
+import java.util.Map;
+import java.util.function.Consumer;
 
 import net.shazam.entities.StudentTest;
+import net.shazam.storage.GradeStore;
+import net.shazam.storage.JpaGradeStore;
+import net.shazam.storage.LogStructuredGradeStore;
 
 /**
- * This class serves as our interface between our console client 
- * and our persistent entity. 
+ * This class serves as our interface between our console client
+ * and our persistent entity. The actual storing is done by a
+ * {@code GradeStore}, chosen with the {@code graidtrax.store} system
+ * property: "jpa" (the default) for the MySQL database, or "embedded"
+ * for a single file named by {@code graidtrax.store.file}.
  * @author alexdrawbond
  *
  */
 public class GradesBean {
-	//The Entity Manager Factory provides Entity Managers
-	public static final EntityManagerFactory EMF  = Persistence.createEntityManagerFactory("GraidTraXDB");
-	 
+	//System properties used to pick the default store
+	public static final String STORE_PROPERTY = "graidtrax.store";
+	public static final String STORE_FILE_PROPERTY = "graidtrax.store.file";
+
+	//The store shared by every GradesBean created with the no-arg constructor
+	private static GradeStore defaultStore;
+
+	//The store this bean reads and writes
+	private final GradeStore store;
+
+	/**
+	 * Creates a bean backed by the default store.
+	 */
+	public GradesBean() {
+		this(getDefaultStore());
+	}
+
+	/**
+	 * Creates a bean backed by {@code store}.
+	 * @param store where test records are kept
+	 */
+	public GradesBean(GradeStore store) {
+		this.store = store;
+	}
+
 	/**
 	 * Creates a {@code StudentTest} and saves it to the database.
 	 * @param firstName student's first name
@@ -35,240 +59,130 @@ public class GradesBean {
 	 * @return a boolean indicating the record was successfully created
 	 */
 	public boolean createTestRecord(String firstName, String lastName, BigDecimal score, Calendar testDate) {
-		boolean successful = true;
-		//Manages persistence entities
-		EntityManager em = EMF.createEntityManager();
-		//Create object representing record
-		StudentTest studentTest = new StudentTest(firstName, lastName, score, testDate);
-		
-		try {
-			//begin transaction
-			em.getTransaction().begin();
-			//save object o database as record
-			em.persist(studentTest);
-			//commit the record to the database
-			em.getTransaction().commit();
-		} catch(Exception e) {
-			successful = false;
-			System.out.println(e);
-		} finally {
-			//Be a good citizen: close the entity manager so you
-			//don't leave connections open to the database
-			em.close();
-		}
-		
-		return successful;
+		return store.createTestRecord(firstName, lastName, score, testDate);
 	}
-	
+
 	/**
 	 * Queries for records by last name.
 	 * @param lastName the last name to search for
 	 * @return list of records found in database
 	 */
 	public List<StudentTest> queryTestRecords(String lastName) {
-		//Manages persistence entities
-		EntityManager em = EMF.createEntityManager();
-		List<StudentTest> results = null;
-		
-		try {
-			//Used to construct criteria queries, compound selections, expressions, predicates, orderings
-			CriteriaBuilder cb = em.getCriteriaBuilder();
-			//Used to construct all the criteria for our query
-			CriteriaQuery<StudentTest> criteriaQuery = cb.createQuery(StudentTest.class);
-			//Root object represents the "FROM" portion of a SELECT statement
-			Root<StudentTest> rootItem = criteriaQuery.from(StudentTest.class);
-			
-			//Lets combine rootItem (FROM clause) with a WHERE clause
-			criteriaQuery = criteriaQuery.select(rootItem).where(cb.equal(rootItem.<String>get("lastName"), lastName));
-			//Create our SELECT statement in a type safe way
-			TypedQuery<StudentTest> typedQuery = em.createQuery(criteriaQuery);
-			//Run query against database and get results
-			results = (List<StudentTest>) typedQuery.getResultList();
-		} catch(Exception e) {
-			System.out.println(e);
-		} finally {
-			//Be a good citizen: close the entity manager so you
-			//don't leave connections open to the database
-			em.close();
-		}	
-		
-		return results;
+		return store.queryTestRecords(lastName);
+	}
+
+	/**
+	 * Queries for the records of many students at once.
+	 * @param lastNames the last names to search for
+	 * @return records found in database keyed by last name
+	 */
+	public Map<String, List<StudentTest>> queryTestRecords(Collection<String> lastNames) {
+		return store.queryTestRecords(lastNames);
 	}
-	
+
 	/**
 	 * Queries for records by date.
 	 * @param testDate the date to search for
 	 * @return list of records found in database
 	 */
 	public List<StudentTest> queryTestRecords(Calendar testDate) {
-		//Manages persistence entities
-		EntityManager em = EMF.createEntityManager();
-		List<StudentTest> results = null;
-		
-		try {
-			//Create a SELECT statement in a type safe way using JPQL
-			TypedQuery<StudentTest> typedQuery = em.createQuery("select st from StudentTest st where st.testDate >= :testDate", StudentTest.class);
-			//Substitute parameter with actual data
-			typedQuery.setParameter("testDate", testDate);
-			//Run query against database and get results
-			results = typedQuery.getResultList();
-		} catch(Exception e) {
-			System.out.println(e);
-		} finally {
-			//Be a good citizen: close the entity manager so you
-			//don't leave connections open to the database
-			em.close();
-		}
-		
-		return results;
+		return store.queryTestRecords(testDate);
 	}
-	
+
 	/**
 	 * Queries for records by a range of scores.
 	 * @param minScore the minimum score to search for (inclusive)
 	 * @param maxScore the maximum score to search for (inclusive)
-	 * @return
+	 * @return list of records found in database
 	 */
 	public List<StudentTest> queryTestRecords(BigDecimal minScore, BigDecimal maxScore) {
-		//Manages persistence entities
-		EntityManager em = EMF.createEntityManager();
-		List<StudentTest> results = null;
-		
-		try {
-			//Create a SELECT statement in a type safe way using a Named Query
-			TypedQuery<StudentTest> typedQuery = em.createNamedQuery("QueryStudentTestByScore", StudentTest.class);
-			//Substitute parameters with actual data
-			typedQuery.setParameter("minScore", minScore);
-			typedQuery.setParameter("maxScore", maxScore);
-			//Run query against database and get results
-			results = typedQuery.getResultList();
-		} catch(Exception e) {
-			System.out.println(e);
-		} finally {
-			//Be a good citizen: close the entity manager so you
-			//don't leave connections open to the database
-			em.close();
-		}
-		
-		return results;
+		return store.queryTestRecords(minScore, maxScore);
 	}
-	
+
+	/**
+	 * Streams records by last name to {@code consumer} as they are read.
+	 * @param lastName the last name to search for
+	 * @param consumer receives each record found
+	 */
+	public void streamTestRecords(String lastName, Consumer<StudentTest> consumer) {
+		store.streamTestRecords(lastName, consumer);
+	}
+
+	/**
+	 * Streams records on or after a date to {@code consumer} as they are read.
+	 * @param testDate the date to search for
+	 * @param consumer receives each record found
+	 */
+	public void streamTestRecords(Calendar testDate, Consumer<StudentTest> consumer) {
+		store.streamTestRecords(testDate, consumer);
+	}
+
+	/**
+	 * Streams records within a range of scores to {@code consumer} as they are read.
+	 * @param minScore the minimum score to search for (inclusive)
+	 * @param maxScore the maximum score to search for (inclusive)
+	 * @param consumer receives each record found
+	 */
+	public void streamTestRecords(BigDecimal minScore, BigDecimal maxScore, Consumer<StudentTest> consumer) {
+		store.streamTestRecords(minScore, maxScore, consumer);
+	}
+
 	/**
 	 * Queries for records by last name and date. Updates the records found with
 	 * the new score entered by the user.
-	 * 
+	 *
 	 * @param lastName the last name to search for
 	 * @param testDate the date to search for
 	 * @param score the score to search for
 	 * @return boolean indicating that records were successfully updated
 	 */
 	public boolean updateTestRecords(String lastName, Calendar testDate, BigDecimal score) {
-		boolean successful = true;
-		//Manages persistence entities
-		EntityManager em = EMF.createEntityManager();
-		List<StudentTest> results = null;
-		
-		//Used to construct criteria queries, compound selections, expressions, predicates, orderings
-		CriteriaBuilder cb = em.getCriteriaBuilder();
-		//Used to construct all the criteria for our query
-		CriteriaQuery<StudentTest> criteriaQuery = cb.createQuery(StudentTest.class);
-		//Root object represents the "FROM" portion of a SELECT statement
-		Root<StudentTest> rootItem = criteriaQuery.from(StudentTest.class);
-		
-		try {
-			//List of Predicates to be ANDED together
-			//Predicates are functions that map to a boolean value (true/false)
-			List<Predicate> andedPredicates = new ArrayList<Predicate>();
-			
-			//Compare the last name enter by the user to last name in database
-			andedPredicates.add(cb.equal(rootItem.<String>get("lastName"), lastName));
-			//Compare the date entered by the user to the date in the database
-			andedPredicates.add(cb.equal(rootItem.<Calendar>get("testDate"), testDate));
-			
-			//Use our Predicates to build a WHERE clause
-			criteriaQuery.where(andedPredicates.toArray(new Predicate[andedPredicates.size()]));
-			//Run query against database and get results
-			results = em.createQuery(criteriaQuery).getResultList();
-			
-			if(results.size() == 0)
-				successful = false;
-			
-			//begin transaction
-			em.getTransaction().begin();
-			//loop through each record retrieved from the database
-			//and set its score to new value
-			for(StudentTest test : results) {
-				//set score
-				test.setScore(score);
-				//save record to database
-				em.persist(test);
-			}	
-			//commit our changes to the database
-			em.getTransaction().commit();
-		} catch(Exception e) {
-			System.out.println(e);
-		} finally {
-			//Be a good citizen: close the entity manager so you
-			//don't leave connections open to the database
-			em.close();
-		}
-		
-		return successful;
+		return store.updateTestRecords(lastName, testDate, score);
 	}
-	
+
 	/**
 	 * Queries for records by last name, then deletes them all.
 	 * @param lastName the last name to search for
 	 * @return boolean indicating that records were successfully deleted
 	 */
 	public boolean deleteTestRecordsByLastName(String lastName) {
-		boolean successful = true;
-		//Manages persistence entities
-		EntityManager em = EMF.createEntityManager();
-		List<StudentTest> results = null;
-		
-		//Used to construct criteria queries, compound selections, expressions, predicates, orderings
-		CriteriaBuilder cb = em.getCriteriaBuilder();
-		//Used to construct all the criteria for our query
-		CriteriaQuery<StudentTest> criteriaQuery = cb.createQuery(StudentTest.class);
-		//Root object represents the "FROM" portion of a SELECT statement
-		Root<StudentTest> rootItem = criteriaQuery.from(StudentTest.class);
-		
-		try {
-			//Lets combine rootItem (FROM clause) with a WHERE clause
-			criteriaQuery = criteriaQuery.select(rootItem).where(cb.equal(rootItem.<String>get("lastName"), lastName));
-			//Create our SELECT statement in a type safe way
-			TypedQuery<StudentTest> typedQuery = em.createQuery(criteriaQuery);
-			//Run query against database and get results
-			results = typedQuery.getResultList();
-			
-			//begin transaction
-			em.getTransaction().begin();
-			//loop through each record found in the database
-			//and delete it
-			for(StudentTest test : results) {
-				//delete record
-				em.remove(test);
+		return store.deleteTestRecordsByLastName(lastName);
+	}
+
+	/**
+	 * Returns the shared store, opening it the first time it is needed.
+	 * @return the default store
+	 */
+	public static synchronized GradeStore getDefaultStore() {
+		if(defaultStore == null) {
+			String storeType = System.getProperty(STORE_PROPERTY, "jpa");
+
+			switch(storeType) {
+			case "jpa":
+				defaultStore = new JpaGradeStore();
+				break;
+			case "embedded":
+				try {
+					defaultStore = new LogStructuredGradeStore(new File(System.getProperty(STORE_FILE_PROPERTY, "graidtrax.db")));
+				} catch(IOException e) {
+					throw new UncheckedIOException(e);
+				}
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown " + STORE_PROPERTY + ": " + storeType);
 			}
-			//commit our deletes to the database
-			em.getTransaction().commit();
-		} catch(Exception e) {
-			successful = false;
-			System.out.println(e);
-		} finally {
-			//Be a good citizen: close the entity manager so you
-			//don't leave connections open to the database
-			em.close();
 		}
-		
-		return successful;
+		return defaultStore;
 	}
-	
+
 	/**
-	 * Closes down the entity manager factory to free
+	 * Closes down the default store to free
 	 * up resources.
 	 */
-	public static void shutdownEntityManagerFactory() {
-		EMF.close();
+	public static synchronized void shutdownStore() {
+		if(defaultStore != null) {
+			defaultStore.close();
+			defaultStore = null;
+		}
 	}
 }
@@ -9,6 +9,7 @@ import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.NamedQueries;
 import javax.persistence.NamedQuery;
 import javax.persistence.Table;
 import javax.persistence.Temporal;
@@ -27,9 +28,14 @@ import javax.persistence.TemporalType;
 @Entity
 //This annotation tell JPA which table our Persistence Entity represents
 @Table(name="STUDENT_TESTS", schema = "SHAZAM")
-//This annotation binds a static query to our Persistence Entity
-@NamedQuery(name = "QueryStudentTestByScore", 
-			query = "SELECT st FROM StudentTest st where st.score >= :minScore and st.score <= :maxScore")
+//This annotation binds static queries to our Persistence Entity
+@NamedQueries({
+	@NamedQuery(name = "QueryStudentTestByScore", 
+				query = "SELECT st FROM StudentTest st where st.score >= :minScore and st.score <= :maxScore ORDER BY st.id"),
+	//The same query picking up after a given id, for reading it a page at a time
+	@NamedQuery(name = "QueryStudentTestByScoreAfterId", 
+				query = "SELECT st FROM StudentTest st where st.score >= :minScore and st.score <= :maxScore and st.id > :afterId ORDER BY st.id")
+})
 public class StudentTest implements Serializable {
 	//This annotation tells JPA that this column contains a unique value for each record
 	//Essentially telling JPA that this is our primary key
@@ -49,6 +55,11 @@ public class StudentTest implements Serializable {
 	@Column(name = "LAST_NAME")
 	private String lastName;
 	
+	//The last name as it is matched, see LastNames.key(). Kept in its own
+	//indexed column so lookups can use the index instead of scanning
+	@Column(name = "LAST_NAME_KEY")
+	private String lastNameKey;
+	
 	//This annotation tells JPA to save our attribute as a date
 	//It is always required when persisting attributes of type 
 	//{@code Date} or {@code Calendar}
@@ -103,6 +114,13 @@ public class StudentTest implements Serializable {
 	public void setLastName(String lastName) {
 		this.lastName = lastName;
 	}   
+	public String getLastNameKey() {
+		return this.lastNameKey;
+	}
+
+	public void setLastNameKey(String lastNameKey) {
+		this.lastNameKey = lastNameKey;
+	}   
 	public Calendar getTestDate() {
 		return this.testDate;
 	}
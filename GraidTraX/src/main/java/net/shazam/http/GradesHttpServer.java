@@ -0,0 +1,527 @@
+package net.shazam.http;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import net.shazam.backingbeans.GradesBean;
+import net.shazam.entities.StudentTest;
+import net.shazam.reports.ReportCard;
+import net.shazam.reports.ReportCardGenerator;
+
+/**
+ * This class exposes GradesBean over HTTP using the JDK's built-in server,
+ * so other systems can work with grades without going through the console client.
+ *
+ *   POST   /tests   firstName, lastName, score, date    create a test record
+ *   GET    /tests   lastName | date | minScore and maxScore
+ *   PUT    /tests   lastName, date, score               update matching records
+ *   DELETE /tests   lastName                            delete a student's records
+ *   GET    /report-cards   lastName (repeated)          a report card per student
+ *   GET    /metrics                                     request counts and latencies
+ *
+ * Parameters come from the query string or a form-encoded body, and dates are
+ * yyyy-MM-dd. Queries are streamed back as one JSON object per line while the
+ * records are still being read. Every request runs on its own virtual thread
+ * when the JVM has them, and requests past the in-flight limit get a 503
+ * straight away instead of queueing.
+ * @author alexdrawbond
+ *
+ */
+public class GradesHttpServer {
+	//System properties used to configure the server
+	public static final String PORT_PROPERTY = "graidtrax.http.port";
+	public static final String MAX_IN_FLIGHT_PROPERTY = "graidtrax.http.maxInFlight";
+
+	private final GradesBean gradesBean;
+	private final ReportCardGenerator reportCardGenerator;
+	private final HttpServer server;
+	private final ExecutorService executor;
+	private final int maxInFlight;
+	//One permit per request we are willing to work on at once
+	private final Semaphore inFlight;
+	private final RequestMetrics metrics = new RequestMetrics();
+
+	/**
+	 * Creates a server. Nothing is served until {@link #start()} is called.
+	 * @param gradesBean where requests are sent
+	 * @param port the port to listen on
+	 * @param maxInFlight how many requests can be handled at once
+	 * @throws IOException if the port can't be bound
+	 */
+	public GradesHttpServer(GradesBean gradesBean, int port, int maxInFlight) throws IOException {
+		this.gradesBean = gradesBean;
+		this.reportCardGenerator = new ReportCardGenerator(gradesBean);
+		this.maxInFlight = maxInFlight;
+		this.inFlight = new Semaphore(maxInFlight);
+		this.executor = newRequestExecutor();
+
+		server = HttpServer.create(new InetSocketAddress(port), maxInFlight);
+		server.setExecutor(executor);
+		server.createContext("/tests", limited(this::handleTests));
+		server.createContext("/report-cards", limited(this::handleReportCards));
+		server.createContext("/metrics", this::handleMetrics);
+	}
+
+	/**
+	 * Starts accepting requests.
+	 */
+	public void start() {
+		server.start();
+	}
+
+	/**
+	 * Stops accepting requests, giving the ones in flight a second to finish.
+	 */
+	public void stop() {
+		server.stop(1);
+		executor.shutdown();
+		reportCardGenerator.shutdown();
+	}
+
+	/**
+	 * @return the port the server is listening on
+	 */
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	/**
+	 * Runs the server until the JVM is shut down.
+	 * @param args ignored, see {@link #PORT_PROPERTY} and {@link #MAX_IN_FLIGHT_PROPERTY}
+	 */
+	public static void main(String[] args) {
+		int port = Integer.getInteger(PORT_PROPERTY, 8080);
+		int maxInFlight = Integer.getInteger(MAX_IN_FLIGHT_PROPERTY, 10000);
+
+		try {
+			GradesHttpServer httpServer = new GradesHttpServer(new GradesBean(), port, maxInFlight);
+			Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+				httpServer.stop();
+				//Be a good citizen: close the grade store to recycle resources
+				GradesBean.shutdownStore();
+			}));
+			httpServer.start();
+			System.out.println("Serving grades on port " + httpServer.getPort());
+		} catch(IOException e) {
+			System.out.println(e);
+			GradesBean.shutdownStore();
+		}
+	}
+
+	/**
+	 * Uses a virtual thread per request on Java 21 and up. Older JVMs don't have
+	 * them, so fall back to a pool that grows with the load; the in-flight limit
+	 * keeps that from running away.
+	 */
+	private static ExecutorService newRequestExecutor() {
+		try {
+			Method virtualThreadPerTask = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) virtualThreadPerTask.invoke(null);
+		} catch(ReflectiveOperationException e) {
+			return Executors.newCachedThreadPool();
+		}
+	}
+
+	/**
+	 * Wraps {@code handler} with the in-flight limit and latency metrics.
+	 */
+	private HttpHandler limited(HttpHandler handler) {
+		return exchange -> {
+			if(!inFlight.tryAcquire()) {
+				metrics.reject();
+				try {
+					sendJson(exchange, 503, "{\"error\":\"too many requests in flight\"}");
+				} finally {
+					exchange.close();
+				}
+				return;
+			}
+
+			long start = System.nanoTime();
+			boolean streamFailed = false;
+			try {
+				handler.handle(exchange);
+			} catch(StreamFailedException e) {
+				//The client was told at the end of the stream, but it still went wrong on our side
+				streamFailed = true;
+				System.out.println(e.getCause());
+			} catch(IllegalArgumentException e) {
+				//Bad or missing parameters
+				sendErrorIfPossible(exchange, 400, e);
+			} catch(Exception e) {
+				System.out.println(e);
+				sendErrorIfPossible(exchange, 500, e);
+			} finally {
+				exchange.close();
+				inFlight.release();
+				metrics.record(streamFailed ? 500 : exchange.getResponseCode(), System.nanoTime() - start);
+			}
+		};
+	}
+
+	private void handleTests(HttpExchange exchange) throws IOException {
+		Map<String, List<String>> params = readParams(exchange);
+
+		switch(exchange.getRequestMethod()) {
+		case "GET":
+			queryTests(exchange, params);
+			break;
+		case "POST":
+			boolean created = gradesBean.createTestRecord(param(params, "firstName"), param(params, "lastName"),
+					decimalParam(params, "score"), parseDate(param(params, "date")));
+			sendJson(exchange, created ? 201 : 500, "{\"successful\":" + created + "}");
+			break;
+		case "PUT":
+			boolean updated = gradesBean.updateTestRecords(param(params, "lastName"),
+					parseDate(param(params, "date")), decimalParam(params, "score"));
+			sendJson(exchange, updated ? 200 : 404, "{\"successful\":" + updated + "}");
+			break;
+		case "DELETE":
+			boolean deleted = gradesBean.deleteTestRecordsByLastName(param(params, "lastName"));
+			sendJson(exchange, deleted ? 200 : 500, "{\"successful\":" + deleted + "}");
+			break;
+		default:
+			exchange.getResponseHeaders().set("Allow", "GET, POST, PUT, DELETE");
+			sendJson(exchange, 405, "{\"error\":\"method not allowed\"}");
+		}
+	}
+
+	/**
+	 * Streams the matching records back as chunked JSON lines. The status line
+	 * waits for the first record, so a query that fails before producing anything
+	 * still gets a 500. One that fails later ends with an {"error":...} line.
+	 */
+	private void queryTests(HttpExchange exchange, Map<String, List<String>> params) throws IOException {
+		//Validate everything before the status line goes out
+		String lastName = null;
+		Calendar testDate = null;
+		BigDecimal minScore = null;
+		BigDecimal maxScore = null;
+		if(params.containsKey("lastName")) {
+			lastName = param(params, "lastName");
+		} else if(params.containsKey("date")) {
+			testDate = parseDate(param(params, "date"));
+		} else if(params.containsKey("minScore") || params.containsKey("maxScore")) {
+			minScore = decimalParam(params, "minScore");
+			maxScore = decimalParam(params, "maxScore");
+		} else {
+			throw new IllegalArgumentException("One of lastName, date or minScore and maxScore is required");
+		}
+
+		JsonLinesWriter writeLine = new JsonLinesWriter(exchange);
+		try {
+			if(lastName != null)
+				gradesBean.streamTestRecords(lastName, writeLine);
+			else if(testDate != null)
+				gradesBean.streamTestRecords(testDate, writeLine);
+			else
+				gradesBean.streamTestRecords(minScore, maxScore, writeLine);
+		} catch(RuntimeException e) {
+			//The client went away part way through
+			if(writeLine.clientError != null)
+				throw writeLine.clientError;
+			//Nothing has been sent yet, so the status can still say what happened
+			if(!writeLine.isStarted())
+				throw e;
+			//Too late for a status, so end with a line no record looks like
+			writeLine.finishWithError(e);
+			throw new StreamFailedException(e);
+		}
+		writeLine.finish();
+	}
+
+	/**
+	 * Sends back a report card per student as JSON lines.
+	 */
+	private void handleReportCards(HttpExchange exchange) throws IOException {
+		if(!exchange.getRequestMethod().equals("GET")) {
+			exchange.getResponseHeaders().set("Allow", "GET");
+			sendJson(exchange, 405, "{\"error\":\"method not allowed\"}");
+			return;
+		}
+
+		List<String> lastNames = readParams(exchange).get("lastName");
+		if(lastNames == null)
+			throw new IllegalArgumentException("Missing parameter lastName");
+
+		List<ReportCard> reportCards = reportCardGenerator.generate(lastNames);
+		if(reportCards == null) {
+			sendJson(exchange, 500, "{\"successful\":false}");
+			return;
+		}
+
+		exchange.getResponseHeaders().set("Content-Type", "application/x-ndjson; charset=UTF-8");
+		//A length of zero tells the server to use chunked encoding
+		exchange.sendResponseHeaders(200, 0);
+		try(Writer out = new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8))) {
+			for(ReportCard reportCard : reportCards) {
+				out.write(toJson(reportCard));
+				out.write('\n');
+			}
+		}
+	}
+
+	private void handleMetrics(HttpExchange exchange) throws IOException {
+		try {
+			sendJson(exchange, 200, metrics.toJson(maxInFlight - inFlight.availablePermits()));
+		} finally {
+			exchange.close();
+		}
+	}
+
+	private static void sendJson(HttpExchange exchange, int status, String json) throws IOException {
+		byte[] body = json.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+		exchange.sendResponseHeaders(status, body.length);
+		try(OutputStream out = exchange.getResponseBody()) {
+			out.write(body);
+		}
+	}
+
+	//Once a streamed response has started the status is already gone, so all we can do is cut it off
+	private static void sendErrorIfPossible(HttpExchange exchange, int status, Exception e) {
+		if(exchange.getResponseCode() != -1)
+			return;
+		try {
+			sendJson(exchange, status, "{\"error\":" + quote(String.valueOf(e.getMessage())) + "}");
+		} catch(IOException ignored) {
+			//Nothing left to tell the client
+		}
+	}
+
+	/**
+	 * Collects parameters from the query string and, for form posts, the body.
+	 */
+	private static Map<String, List<String>> readParams(HttpExchange exchange) throws IOException {
+		Map<String, List<String>> params = new HashMap<String, List<String>>();
+		parseQuery(exchange.getRequestURI().getRawQuery(), params);
+
+		String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+		if(contentType != null && contentType.startsWith("application/x-www-form-urlencoded"))
+			parseQuery(readBody(exchange.getRequestBody()), params);
+
+		return params;
+	}
+
+	private static void parseQuery(String query, Map<String, List<String>> params) throws UnsupportedEncodingException {
+		if(query == null || query.isEmpty())
+			return;
+		for(String pair : query.split("&")) {
+			int equals = pair.indexOf('=');
+			String name = URLDecoder.decode(equals < 0 ? pair : pair.substring(0, equals), "UTF-8");
+			String value = equals < 0 ? "" : URLDecoder.decode(pair.substring(equals + 1), "UTF-8");
+			params.computeIfAbsent(name, k -> new ArrayList<String>()).add(value);
+		}
+	}
+
+	private static String readBody(InputStream in) throws IOException {
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		byte[] buffer = new byte[4096];
+		int read;
+		while((read = in.read(buffer)) != -1)
+			body.write(buffer, 0, read);
+		return new String(body.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	private static String param(Map<String, List<String>> params, String name) {
+		List<String> values = params.get(name);
+		if(values == null || values.isEmpty())
+			throw new IllegalArgumentException("Missing parameter " + name);
+		return values.get(0);
+	}
+
+	private static BigDecimal decimalParam(Map<String, List<String>> params, String name) {
+		String value = param(params, name);
+		try {
+			return new BigDecimal(value);
+		} catch(NumberFormatException e) {
+			throw new IllegalArgumentException(name + " must be a number: " + value);
+		}
+	}
+
+	/**
+	 * Takes a string date with format yyyy-MM-dd and converts
+	 * it to a {@code Calendar} object.
+	 */
+	static Calendar parseDate(String stringDate) {
+		String[] parsedStringDate = stringDate.split("-");
+		if(parsedStringDate.length != 3)
+			throw new IllegalArgumentException("Dates must be yyyy-MM-dd: " + stringDate);
+
+		Calendar date = Calendar.getInstance();
+		date.clear();
+		//Otherwise 2020-13-45 quietly rolls over into 2021
+		date.setLenient(false);
+		try {
+			date.set(Integer.parseInt(parsedStringDate[0]), Integer.parseInt(parsedStringDate[1]) - 1, Integer.parseInt(parsedStringDate[2]));
+			//A Calendar only checks its fields once it has to work out the time
+			date.getTime();
+		} catch(IllegalArgumentException e) {
+			//Covers NumberFormatException too
+			throw new IllegalArgumentException("Dates must be yyyy-MM-dd: " + stringDate);
+		}
+		return date;
+	}
+
+	static String toJson(StudentTest test) {
+		return "{\"id\":" + quote(test.getId())
+				+ ",\"firstName\":" + quote(test.getFirstName())
+				+ ",\"lastName\":" + quote(test.getLastName())
+				+ ",\"testDate\":" + toJson(test.getTestDate())
+				+ ",\"score\":" + toJson(test.getScore())
+				+ "}";
+	}
+
+	private static String toJson(Calendar date) {
+		if(date == null)
+			return "null";
+		return String.format("\"%04d-%02d-%02d\"", date.get(Calendar.YEAR), date.get(Calendar.MONTH) + 1, date.get(Calendar.DATE));
+	}
+
+	private static String toJson(BigDecimal number) {
+		return number == null ? "null" : number.toPlainString();
+	}
+
+	static String toJson(ReportCard reportCard) {
+		return "{\"firstName\":" + quote(reportCard.getFirstName())
+				+ ",\"lastName\":" + quote(reportCard.getLastName())
+				+ ",\"testCount\":" + reportCard.getTestCount()
+				+ ",\"averageScore\":" + toJson(reportCard.getAverageScore())
+				+ ",\"lowestScore\":" + toJson(reportCard.getLowestScore())
+				+ ",\"highestScore\":" + toJson(reportCard.getHighestScore())
+				+ ",\"latestScore\":" + toJson(reportCard.getLatestScore())
+				+ ",\"latestTestDate\":" + toJson(reportCard.getLatestTestDate())
+				+ "}";
+	}
+
+	static String quote(String value) {
+		if(value == null)
+			return "null";
+
+		StringBuilder json = new StringBuilder(value.length() + 2).append('"');
+		for(int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch(c) {
+			case '"':
+				json.append("\\\"");
+				break;
+			case '\\':
+				json.append("\\\\");
+				break;
+			case '\n':
+				json.append("\\n");
+				break;
+			case '\r':
+				json.append("\\r");
+				break;
+			case '\t':
+				json.append("\\t");
+				break;
+			default:
+				if(c < 0x20)
+					json.append(String.format("\\u%04x", (int) c));
+				else
+					json.append(c);
+			}
+		}
+		return json.append('"').toString();
+	}
+
+	/**
+	 * Writes records as JSON lines, only sending the status line and headers
+	 * once there is something to write or the stream is finished.
+	 */
+	private static class JsonLinesWriter implements Consumer<StudentTest> {
+		private final HttpExchange exchange;
+		private Writer out;
+		//Set when writing to the client failed, as opposed to the store
+		private IOException clientError;
+
+		JsonLinesWriter(HttpExchange exchange) {
+			this.exchange = exchange;
+		}
+
+		@Override
+		public void accept(StudentTest test) {
+			try {
+				writeLine(toJson(test));
+			} catch(IOException e) {
+				clientError = e;
+				throw new UncheckedIOException(e);
+			}
+		}
+
+		boolean isStarted() {
+			return out != null;
+		}
+
+		void finishWithError(Exception e) {
+			try {
+				writeLine("{\"error\":" + quote(String.valueOf(e.getMessage())) + "}");
+				finish();
+			} catch(IOException ignored) {
+				//Nothing left to tell the client
+			}
+		}
+
+		/**
+		 * Sends the headers if no record did, then the last chunk.
+		 */
+		void finish() throws IOException {
+			start();
+			out.close();
+		}
+
+		private void writeLine(String json) throws IOException {
+			start();
+			out.write(json);
+			out.write('\n');
+		}
+
+		private void start() throws IOException {
+			if(out != null)
+				return;
+			exchange.getResponseHeaders().set("Content-Type", "application/x-ndjson; charset=UTF-8");
+			//A length of zero tells the server to use chunked encoding
+			exchange.sendResponseHeaders(200, 0);
+			out = new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8));
+		}
+	}
+
+	/**
+	 * Thrown once a streamed response has been ended with an error line, so the
+	 * request is still counted as a server error.
+	 */
+	private static class StreamFailedException extends IOException {
+		private static final long serialVersionUID = 1L;
+
+		StreamFailedException(Throwable cause) {
+			super(cause);
+		}
+	}
+}
@@ -0,0 +1,97 @@
+package net.shazam.http;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class keeps request-level latency numbers for the HTTP server. Latencies
+ * go into a histogram with one bucket per power of two microseconds, so recording
+ * a request is a couple of atomic increments no matter how busy the server is,
+ * and percentiles are accurate to within a factor of two.
+ * @author alexdrawbond
+ *
+ */
+public class RequestMetrics {
+	//Bucket i holds latencies below 2^(i+1) microseconds, the last one holds everything slower
+	static final int BUCKETS = 40;
+
+	private final LongAdder requests = new LongAdder();
+	private final LongAdder serverErrors = new LongAdder();
+	private final LongAdder rejected = new LongAdder();
+	private final LongAdder totalNanos = new LongAdder();
+	private final AtomicLong maxNanos = new AtomicLong();
+	private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+
+	/**
+	 * Records a request that was handled.
+	 * @param status the HTTP status sent back
+	 * @param nanos how long the request took
+	 */
+	public void record(int status, long nanos) {
+		requests.increment();
+		if(status >= 500)
+			serverErrors.increment();
+		totalNanos.add(nanos);
+		histogram.incrementAndGet(bucket(nanos));
+
+		long max = maxNanos.get();
+		while(nanos > max && !maxNanos.compareAndSet(max, nanos))
+			max = maxNanos.get();
+	}
+
+	/**
+	 * Records a request turned away because too many were already in flight.
+	 */
+	public void reject() {
+		rejected.increment();
+	}
+
+	/**
+	 * Writes the current numbers out as a JSON object.
+	 * @param inFlight how many requests are being handled right now
+	 * @return the metrics as JSON
+	 */
+	public String toJson(int inFlight) {
+		long count = requests.sum();
+		long[] counts = new long[BUCKETS];
+		for(int i = 0; i < BUCKETS; i++)
+			counts[i] = histogram.get(i);
+
+		return "{\"requests\":" + count
+				+ ",\"serverErrors\":" + serverErrors.sum()
+				+ ",\"rejected\":" + rejected.sum()
+				+ ",\"inFlight\":" + inFlight
+				+ ",\"meanMicros\":" + (count == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(totalNanos.sum() / count))
+				+ ",\"p50Micros\":" + percentile(counts, 0.50)
+				+ ",\"p90Micros\":" + percentile(counts, 0.90)
+				+ ",\"p99Micros\":" + percentile(counts, 0.99)
+				+ ",\"maxMicros\":" + TimeUnit.NANOSECONDS.toMicros(maxNanos.get())
+				+ "}";
+	}
+
+	private static int bucket(long nanos) {
+		long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+		int bucket = 63 - Long.numberOfLeadingZeros(Math.max(micros, 1));
+		return Math.min(bucket, BUCKETS - 1);
+	}
+
+	//Upper bound of the bucket the percentile falls in
+	static long percentile(long[] counts, double percentile) {
+		long total = 0;
+		for(long count : counts)
+			total += count;
+		if(total == 0)
+			return 0;
+
+		long target = (long) Math.ceil(total * percentile);
+		long seen = 0;
+		for(int i = 0; i < BUCKETS; i++) {
+			seen += counts[i];
+			if(seen >= target)
+				return 1L << (i + 1);
+		}
+		return 1L << BUCKETS;
+	}
+}
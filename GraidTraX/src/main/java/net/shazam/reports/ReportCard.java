@@ -0,0 +1,109 @@
+package net.shazam.reports;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Calendar;
+import java.util.List;
+
+import net.shazam.entities.StudentTest;
+
+/**
+ * This class summarizes every test one student has taken. It is up to the
+ * caller to pass in a single student's tests, see {@link ReportCardGenerator}.
+ * Students without any tests get a report card with a count of zero and no scores.
+ * @author alexdrawbond
+ *
+ */
+public class ReportCard {
+	private final String firstName;
+	private final String lastName;
+	private final int testCount;
+	private final BigDecimal averageScore;
+	private final BigDecimal lowestScore;
+	private final BigDecimal highestScore;
+	private final BigDecimal latestScore;
+	private final Calendar latestTestDate;
+
+	/**
+	 * Builds a report card from a student's tests.
+	 * @param lastName the student's last name
+	 * @param tests every test the student has taken, and no one else's
+	 */
+	public ReportCard(String lastName, List<StudentTest> tests) {
+		String firstName = null;
+		BigDecimal total = BigDecimal.ZERO;
+		BigDecimal lowest = null;
+		BigDecimal highest = null;
+		StudentTest latest = null;
+		int scoredTests = 0;
+
+		for(StudentTest test : tests) {
+			//The database allows tests without a score or date, leave those out of the numbers
+			BigDecimal score = test.getScore();
+			if(score == null || test.getTestDate() == null)
+				continue;
+			scoredTests++;
+			total = total.add(score);
+			if(lowest == null || score.compareTo(lowest) < 0)
+				lowest = score;
+			if(highest == null || score.compareTo(highest) > 0)
+				highest = score;
+			if(latest == null || test.getTestDate().compareTo(latest.getTestDate()) > 0)
+				latest = test;
+		}
+		//Use the name from the most recent test in case its spelling was tidied up along the way
+		if(latest != null)
+			firstName = latest.getFirstName();
+		else if(!tests.isEmpty())
+			firstName = tests.get(0).getFirstName();
+
+		this.firstName = firstName;
+		this.lastName = lastName;
+		this.testCount = tests.size();
+		this.averageScore = scoredTests == 0 ? null : total.divide(BigDecimal.valueOf(scoredTests), 2, RoundingMode.HALF_UP);
+		this.lowestScore = lowest;
+		this.highestScore = highest;
+		this.latestScore = latest == null ? null : latest.getScore();
+		this.latestTestDate = latest == null ? null : latest.getTestDate();
+	}
+
+	public String getFirstName() {
+		return firstName;
+	}
+
+	public String getLastName() {
+		return lastName;
+	}
+
+	public int getTestCount() {
+		return testCount;
+	}
+
+	public BigDecimal getAverageScore() {
+		return averageScore;
+	}
+
+	public BigDecimal getLowestScore() {
+		return lowestScore;
+	}
+
+	public BigDecimal getHighestScore() {
+		return highestScore;
+	}
+
+	public BigDecimal getLatestScore() {
+		return latestScore;
+	}
+
+	public Calendar getLatestTestDate() {
+		return latestTestDate;
+	}
+
+	@Override
+	public String toString() {
+		if(averageScore == null)
+			return lastName + ": no scored tests";
+		return firstName + " " + lastName + ": " + testCount + " tests, average " + averageScore
+				+ ", low " + lowestScore + ", high " + highestScore + ", latest " + latestScore;
+	}
+}
@@ -0,0 +1,156 @@
+package net.shazam.reports;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+import net.shazam.backingbeans.GradesBean;
+import net.shazam.entities.StudentTest;
+import net.shazam.storage.LastNames;
+
+/**
+ * This class builds report cards for a whole roster. The roster is a list of
+ * last names; every student found under a name gets their own card, where two
+ * tests belong to the same student when their first names match the way last
+ * names do (see {@link LastNames}). The roster is split into batches and each
+ * batch is fetched with a single batch lookup. Every batch,
+ * from every caller, runs on one pool of {@code maxConcurrency} threads, so no
+ * matter how many rosters are being generated at once the database never sees
+ * more than that many lookups from us. Call {@link #shutdown()} when done.
+ * @author alexdrawbond
+ *
+ */
+public class ReportCardGenerator {
+	//Defaults used by the no-arg constructor
+	public static final int DEFAULT_BATCH_SIZE = 500;
+	public static final int DEFAULT_MAX_CONCURRENCY = 4;
+
+	private final GradesBean gradesBean;
+	private final int batchSize;
+	//Shared by every call to generate, this is what bounds the lookups
+	private final ExecutorService executor;
+
+	/**
+	 * Creates a generator with the default batch size and concurrency.
+	 * @param gradesBean where test records are looked up
+	 */
+	public ReportCardGenerator(GradesBean gradesBean) {
+		this(gradesBean, DEFAULT_BATCH_SIZE, DEFAULT_MAX_CONCURRENCY);
+	}
+
+	/**
+	 * Creates a generator.
+	 * @param gradesBean where test records are looked up
+	 * @param batchSize how many students are looked up together
+	 * @param maxConcurrency how many batches can be looked up at the same time
+	 */
+	public ReportCardGenerator(GradesBean gradesBean, int batchSize, int maxConcurrency) {
+		if(batchSize < 1 || maxConcurrency < 1)
+			throw new IllegalArgumentException("batchSize and maxConcurrency must be at least 1");
+		this.gradesBean = gradesBean;
+		this.batchSize = batchSize;
+		this.executor = Executors.newFixedThreadPool(maxConcurrency, r -> {
+			Thread t = new Thread(r, "graidtrax-report-cards");
+			//Don't keep the JVM alive if nobody shuts us down
+			t.setDaemon(true);
+			return t;
+		});
+	}
+
+	/**
+	 * Builds a report card for every student on the roster.
+	 * @param lastNames the last names of the students on the roster
+	 * @return a report card per student in roster order, students sharing a last name
+	 *         ordered by first name, and an empty card for a name without any tests;
+	 *         or null if the lookup failed
+	 */
+	public List<ReportCard> generate(Collection<String> lastNames) {
+		List<String> roster = new ArrayList<String>(new LinkedHashSet<String>(lastNames));
+		roster.remove(null);
+		List<ReportCard> reportCards = new ArrayList<ReportCard>(roster.size());
+		if(roster.isEmpty())
+			return reportCards;
+
+		List<List<String>> batches = new ArrayList<List<String>>();
+		for(int from = 0; from < roster.size(); from += batchSize)
+			batches.add(roster.subList(from, Math.min(from + batchSize, roster.size())));
+
+		List<Future<List<ReportCard>>> futures = new ArrayList<Future<List<ReportCard>>>(batches.size());
+		try {
+			for(List<String> batch : batches)
+				futures.add(executor.submit(() -> generateBatch(batch)));
+
+			//Collect in submission order so the report cards follow the roster
+			for(Future<List<ReportCard>> future : futures) {
+				List<ReportCard> batchReportCards = future.get();
+				if(batchReportCards == null)
+					return null;
+				reportCards.addAll(batchReportCards);
+			}
+		} catch(RejectedExecutionException | CancellationException e) {
+			//Shut down before or while we were working
+			System.out.println(e);
+			return null;
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		} catch(ExecutionException e) {
+			System.out.println(e.getCause());
+			return null;
+		} finally {
+			//Don't leave other rosters waiting behind batches nobody needs anymore
+			for(Future<List<ReportCard>> future : futures)
+				future.cancel(true);
+		}
+
+		return reportCards;
+	}
+
+	/**
+	 * Stops the lookup threads. Batches already running are interrupted and
+	 * later calls to {@link #generate(Collection)} return null.
+	 */
+	public void shutdown() {
+		//Batches that never started would leave their callers waiting forever, so cancel them
+		for(Runnable neverStarted : executor.shutdownNow())
+			((Future<?>) neverStarted).cancel(false);
+	}
+
+	private List<ReportCard> generateBatch(List<String> batch) {
+		Map<String, List<StudentTest>> testsByStudent = gradesBean.queryTestRecords(batch);
+		if(testsByStudent == null)
+			return null;
+
+		List<ReportCard> reportCards = new ArrayList<ReportCard>(batch.size());
+		for(String lastName : batch) {
+			Collection<List<StudentTest>> students = byStudent(testsByStudent.get(lastName));
+			//A name without any tests still gets a card saying so
+			if(students.isEmpty())
+				reportCards.add(new ReportCard(lastName, new ArrayList<StudentTest>()));
+			for(List<StudentTest> tests : students)
+				reportCards.add(new ReportCard(lastName, tests));
+		}
+		return reportCards;
+	}
+
+	/**
+	 * Splits the tests found under one last name into the students who took them,
+	 * ordered by first name with unnamed students last.
+	 */
+	private static Collection<List<StudentTest>> byStudent(List<StudentTest> tests) {
+		Map<String, List<StudentTest>> students = new TreeMap<String, List<StudentTest>>(Comparator.nullsLast(Comparator.<String>naturalOrder()));
+		for(StudentTest test : tests)
+			students.computeIfAbsent(LastNames.key(test.getFirstName()), k -> new ArrayList<StudentTest>()).add(test);
+		return students.values();
+	}
+}
@@ -0,0 +1,145 @@
+package net.shazam.storage;
+
+import java.math.BigDecimal;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import net.shazam.entities.StudentTest;
+
+/**
+ * This interface describes everything GradesBean needs from a storage backend.
+ * Keeping the CRUD operations behind this interface lets us swap the JPA/MySQL
+ * backend for the embedded single-file backend without touching the clients.
+ * Every backend matches last names by {@link LastNames#key(String)}, so case and
+ * trailing spaces are ignored no matter where the records are kept.
+ * @author alexdrawbond
+ *
+ */
+public interface GradeStore {
+
+	/**
+	 * Creates a {@code StudentTest} and saves it to the store.
+	 * @param firstName student's first name
+	 * @param lastName student's last name
+	 * @param score score student earned on test
+	 * @param testDate date test was taken
+	 * @return a boolean indicating the record was successfully created
+	 */
+	boolean createTestRecord(String firstName, String lastName, BigDecimal score, Calendar testDate);
+
+	/**
+	 * Queries for records by last name, matched by {@link LastNames#key(String)}.
+	 * @param lastName the last name to search for
+	 * @return list of records found in the store
+	 */
+	List<StudentTest> queryTestRecords(String lastName);
+
+	/**
+	 * Queries for the records of many students at once, grouped by last name.
+	 * Every distinct name passed in gets an entry, in the order given, even if
+	 * no records were found for it. Each name finds the same records a single
+	 * lookup of it would, so "Smith" and "smith" both get every Smith.
+	 * @param lastNames the last names to search for
+	 * @return records found in the store keyed by last name
+	 */
+	default Map<String, List<StudentTest>> queryTestRecords(Collection<String> lastNames) {
+		Map<String, List<StudentTest>> results = new LinkedHashMap<String, List<StudentTest>>();
+		for(String lastName : lastNames) {
+			if(lastName == null || results.containsKey(lastName))
+				continue;
+			List<StudentTest> tests = queryTestRecords(lastName);
+			//Query methods return null when the backend fails
+			if(tests == null)
+				return null;
+			results.put(lastName, tests);
+		}
+		return results;
+	}
+
+	/**
+	 * Queries for records taken on or after a date.
+	 * @param testDate the date to search for
+	 * @return list of records found in the store
+	 */
+	List<StudentTest> queryTestRecords(Calendar testDate);
+
+	/**
+	 * Queries for records by a range of scores.
+	 * @param minScore the minimum score to search for (inclusive)
+	 * @param maxScore the maximum score to search for (inclusive)
+	 * @return list of records found in the store
+	 */
+	List<StudentTest> queryTestRecords(BigDecimal minScore, BigDecimal maxScore);
+
+	/**
+	 * Hands each record with a last name to {@code consumer} as it is read,
+	 * instead of collecting them all into a list first. Anything thrown by
+	 * {@code consumer} is passed on to the caller. Unlike the query methods, a
+	 * failing backend throws, so an empty stream always means nothing matched.
+	 * @param lastName the last name to search for
+	 * @param consumer receives each record found
+	 * @throws RuntimeException if the backend fails, possibly after some records were handed over
+	 */
+	default void streamTestRecords(String lastName, Consumer<StudentTest> consumer) {
+		List<StudentTest> tests = queryTestRecords(lastName);
+		//Query methods return null when the backend fails
+		if(tests == null)
+			throw new IllegalStateException("The grade store failed to run the query");
+		tests.forEach(consumer);
+	}
+
+	/**
+	 * Hands each record taken on or after a date to {@code consumer} as it is read.
+	 * @param testDate the date to search for
+	 * @param consumer receives each record found
+	 * @throws RuntimeException if the backend fails, possibly after some records were handed over
+	 */
+	default void streamTestRecords(Calendar testDate, Consumer<StudentTest> consumer) {
+		List<StudentTest> tests = queryTestRecords(testDate);
+		//Query methods return null when the backend fails
+		if(tests == null)
+			throw new IllegalStateException("The grade store failed to run the query");
+		tests.forEach(consumer);
+	}
+
+	/**
+	 * Hands each record within a range of scores to {@code consumer} as it is read.
+	 * @param minScore the minimum score to search for (inclusive)
+	 * @param maxScore the maximum score to search for (inclusive)
+	 * @param consumer receives each record found
+	 * @throws RuntimeException if the backend fails, possibly after some records were handed over
+	 */
+	default void streamTestRecords(BigDecimal minScore, BigDecimal maxScore, Consumer<StudentTest> consumer) {
+		List<StudentTest> tests = queryTestRecords(minScore, maxScore);
+		//Query methods return null when the backend fails
+		if(tests == null)
+			throw new IllegalStateException("The grade store failed to run the query");
+		tests.forEach(consumer);
+	}
+
+	/**
+	 * Queries for records by last name (matched by {@link LastNames#key(String)})
+	 * and date and sets their score.
+	 * @param lastName the last name to search for
+	 * @param testDate the date to search for
+	 * @param score the new score
+	 * @return boolean indicating that records were found and updated
+	 */
+	boolean updateTestRecords(String lastName, Calendar testDate, BigDecimal score);
+
+	/**
+	 * Deletes every record belonging to a last name, matched by {@link LastNames#key(String)}.
+	 * @param lastName the last name to search for
+	 * @return boolean indicating that records were successfully deleted
+	 */
+	boolean deleteTestRecordsByLastName(String lastName);
+
+	/**
+	 * Releases any resources (connections, files, threads) held by the store.
+	 */
+	void close();
+}
@@ -0,0 +1,501 @@
+package net.shazam.storage;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.BiFunction;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import javax.persistence.TypedQuery;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+
+import net.shazam.entities.StudentTest;
+
+/**
+ * This class is the JPA/Hibernate backend for our grades. Every operation
+ * opens its own Entity Manager against the "GraidTraXDB" persistence unit
+ * declared in persistence.xml.
+ * @author alexdrawbond
+ *
+ */
+public class JpaGradeStore implements GradeStore {
+	//The persistence unit declared in persistence.xml
+	public static final String PERSISTENCE_UNIT = "GraidTraXDB";
+	//Most names we put in a single IN list when looking up many students at once
+	public static final int IN_CHUNK_SIZE = 500;
+	//Most records read per round trip when streaming
+	public static final int STREAM_PAGE_SIZE = 500;
+	
+	//The Entity Manager Factory provides Entity Managers
+	private final EntityManagerFactory emf;
+	
+	/**
+	 * Creates a store backed by the default persistence unit.
+	 */
+	public JpaGradeStore() {
+		this(Persistence.createEntityManagerFactory(PERSISTENCE_UNIT));
+	}
+	
+	/**
+	 * Creates a store backed by an existing Entity Manager Factory.
+	 * @param emf the factory used to create Entity Managers
+	 */
+	public JpaGradeStore(EntityManagerFactory emf) {
+		this.emf = emf;
+	}
+	 
+	/**
+	 * Creates a {@code StudentTest} and saves it to the database.
+	 * @param firstName student's first name
+	 * @param lastName student's last name
+	 * @param score score student earned on test
+	 * @param testDate date test was taken
+	 * @return a boolean indicating the record was successfully created
+	 */
+	@Override
+	public boolean createTestRecord(String firstName, String lastName, BigDecimal score, Calendar testDate) {
+		boolean successful = true;
+		//Manages persistence entities
+		EntityManager em = emf.createEntityManager();
+		//Create object representing record
+		StudentTest studentTest = new StudentTest(firstName, lastName, score, testDate);
+		//Lookups go through the key column, so it has to be filled in with every record
+		studentTest.setLastNameKey(LastNames.key(lastName));
+		
+		try {
+			//begin transaction
+			em.getTransaction().begin();
+			//save object o database as record
+			em.persist(studentTest);
+			//commit the record to the database
+			em.getTransaction().commit();
+		} catch(Exception e) {
+			successful = false;
+			System.out.println(e);
+		} finally {
+			//Be a good citizen: close the entity manager so you
+			//don't leave connections open to the database
+			em.close();
+		}
+		
+		return successful;
+	}
+	
+	/**
+	 * Queries for records by last name.
+	 * @param lastName the last name to search for
+	 * @return list of records found in database
+	 */
+	@Override
+	public List<StudentTest> queryTestRecords(String lastName) {
+		//Manages persistence entities
+		EntityManager em = emf.createEntityManager();
+		List<StudentTest> results = null;
+		
+		try {
+			//Run query against database and get results
+			results = createLastNameQuery(em, lastName, null).getResultList();
+		} catch(Exception e) {
+			System.out.println(e);
+		} finally {
+			//Be a good citizen: close the entity manager so you
+			//don't leave connections open to the database
+			em.close();
+		}	
+		
+		return results;
+	}
+	
+	/**
+	 * Queries for the records of many students in one session. The names are
+	 * matched by {@link LastNames#key(String)} like a single lookup, and sent in
+	 * chunks of {@link #IN_CHUNK_SIZE} so the IN list stays within what the
+	 * database will accept.
+	 * @param lastNames the last names to search for
+	 * @return records found in database keyed by last name
+	 */
+	@Override
+	public Map<String, List<StudentTest>> queryTestRecords(Collection<String> lastNames) {
+		//Give every student an entry up front so the map follows the order we were given
+		Map<String, List<StudentTest>> results = new LinkedHashMap<String, List<StudentTest>>();
+		//Names that differ only in case or trailing spaces share a key, and a record belongs to all of them
+		Map<String, List<String>> namesByKey = new LinkedHashMap<String, List<String>>();
+		for(String lastName : lastNames) {
+			if(lastName == null || results.containsKey(lastName))
+				continue;
+			results.put(lastName, new ArrayList<StudentTest>());
+			namesByKey.computeIfAbsent(LastNames.key(lastName), k -> new ArrayList<String>()).add(lastName);
+		}
+		List<String> keys = new ArrayList<String>(namesByKey.keySet());
+		
+		//Manages persistence entities
+		EntityManager em = emf.createEntityManager();
+		
+		try {
+			for(int from = 0; from < keys.size(); from += IN_CHUNK_SIZE) {
+				List<String> chunk = keys.subList(from, Math.min(from + IN_CHUNK_SIZE, keys.size()));
+				TypedQuery<StudentTest> typedQuery = createLastNamesQuery(em, chunk);
+				//We only read these, so don't let Hibernate snapshot them for dirty checking
+				typedQuery.setHint("org.hibernate.readOnly", true);
+				//Run query against database and file each record under the names sharing its key,
+				//the same key the query matched it on
+				for(StudentTest test : typedQuery.getResultList()) {
+					List<String> matchingNames = namesByKey.get(test.getLastNameKey());
+					//Only happens if LAST_NAME_KEY doesn't compare exactly, see the README
+					if(matchingNames == null) {
+						System.out.println("Record " + test.getId() + " with key " + test.getLastNameKey() + " matched none of the names asked for");
+						continue;
+					}
+					for(String lastName : matchingNames)
+						results.get(lastName).add(test);
+				}
+				//Nothing here needs managing anymore, keep the persistence context small
+				em.clear();
+			}
+		} catch(Exception e) {
+			results = null;
+			System.out.println(e);
+		} finally {
+			//Be a good citizen: close the entity manager so you
+			//don't leave connections open to the database
+			em.close();
+		}
+		
+		return results;
+	}
+	
+	/**
+	 * Queries for records by date.
+	 * @param testDate the date to search for
+	 * @return list of records found in database
+	 */
+	@Override
+	public List<StudentTest> queryTestRecords(Calendar testDate) {
+		//Manages persistence entities
+		EntityManager em = emf.createEntityManager();
+		List<StudentTest> results = null;
+		
+		try {
+			//Run query against database and get results
+			results = createDateQuery(em, testDate, null).getResultList();
+		} catch(Exception e) {
+			System.out.println(e);
+		} finally {
+			//Be a good citizen: close the entity manager so you
+			//don't leave connections open to the database
+			em.close();
+		}
+		
+		return results;
+	}
+	
+	/**
+	 * Queries for records by a range of scores.
+	 * @param minScore the minimum score to search for (inclusive)
+	 * @param maxScore the maximum score to search for (inclusive)
+	 * @return list of records found in database
+	 */
+	@Override
+	public List<StudentTest> queryTestRecords(BigDecimal minScore, BigDecimal maxScore) {
+		//Manages persistence entities
+		EntityManager em = emf.createEntityManager();
+		List<StudentTest> results = null;
+		
+		try {
+			//Run query against database and get results
+			results = createScoreQuery(em, minScore, maxScore, null).getResultList();
+		} catch(Exception e) {
+			System.out.println(e);
+		} finally {
+			//Be a good citizen: close the entity manager so you
+			//don't leave connections open to the database
+			em.close();
+		}
+		
+		return results;
+	}
+	
+	/**
+	 * Streams records by last name a page at a time.
+	 * @param lastName the last name to search for
+	 * @param consumer receives each record as it is read
+	 */
+	@Override
+	public void streamTestRecords(String lastName, Consumer<StudentTest> consumer) {
+		stream((em, afterId) -> createLastNameQuery(em, lastName, afterId), consumer);
+	}
+	
+	/**
+	 * Streams records by date a page at a time.
+	 * @param testDate the date to search for
+	 * @param consumer receives each record as it is read
+	 */
+	@Override
+	public void streamTestRecords(Calendar testDate, Consumer<StudentTest> consumer) {
+		stream((em, afterId) -> createDateQuery(em, testDate, afterId), consumer);
+	}
+	
+	/**
+	 * Streams records by a range of scores a page at a time.
+	 * @param minScore the minimum score to search for (inclusive)
+	 * @param maxScore the maximum score to search for (inclusive)
+	 * @param consumer receives each record as it is read
+	 */
+	@Override
+	public void streamTestRecords(BigDecimal minScore, BigDecimal maxScore, Consumer<StudentTest> consumer) {
+		stream((em, afterId) -> createScoreQuery(em, minScore, maxScore, afterId), consumer);
+	}
+	
+	/**
+	 * Queries for records by last name and date. Updates the records found with
+	 * the new score entered by the user.
+	 * 
+	 * @param lastName the last name to search for
+	 * @param testDate the date to search for
+	 * @param score the score to search for
+	 * @return boolean indicating that records were successfully updated
+	 */
+	@Override
+	public boolean updateTestRecords(String lastName, Calendar testDate, BigDecimal score) {
+		boolean successful = true;
+		//Manages persistence entities
+		EntityManager em = emf.createEntityManager();
+		List<StudentTest> results = null;
+		
+		//Used to construct criteria queries, compound selections, expressions, predicates, orderings
+		CriteriaBuilder cb = em.getCriteriaBuilder();
+		//Used to construct all the criteria for our query
+		CriteriaQuery<StudentTest> criteriaQuery = cb.createQuery(StudentTest.class);
+		//Root object represents the "FROM" portion of a SELECT statement
+		Root<StudentTest> rootItem = criteriaQuery.from(StudentTest.class);
+		
+		try {
+			//List of Predicates to be ANDED together
+			//Predicates are functions that map to a boolean value (true/false)
+			List<Predicate> andedPredicates = new ArrayList<Predicate>();
+			
+			//Compare the last name enter by the user to last name in database
+			andedPredicates.add(lastNameMatches(cb, rootItem, lastName));
+			//Compare the date entered by the user to the date in the database
+			andedPredicates.add(cb.equal(rootItem.<Calendar>get("testDate"), testDate));
+			
+			//Use our Predicates to build a WHERE clause
+			criteriaQuery.where(andedPredicates.toArray(new Predicate[andedPredicates.size()]));
+			//Run query against database and get results
+			results = em.createQuery(criteriaQuery).getResultList();
+			
+			if(results.size() == 0)
+				successful = false;
+			
+			//begin transaction
+			em.getTransaction().begin();
+			//loop through each record retrieved from the database
+			//and set its score to new value
+			for(StudentTest test : results) {
+				//set score
+				test.setScore(score);
+				//save record to database
+				em.persist(test);
+			}	
+			//commit our changes to the database
+			em.getTransaction().commit();
+		} catch(Exception e) {
+			System.out.println(e);
+		} finally {
+			//Be a good citizen: close the entity manager so you
+			//don't leave connections open to the database
+			em.close();
+		}
+		
+		return successful;
+	}
+	
+	/**
+	 * Queries for records by last name, then deletes them all.
+	 * @param lastName the last name to search for
+	 * @return boolean indicating that records were successfully deleted
+	 */
+	@Override
+	public boolean deleteTestRecordsByLastName(String lastName) {
+		boolean successful = true;
+		//Manages persistence entities
+		EntityManager em = emf.createEntityManager();
+		List<StudentTest> results = null;
+		
+		//Used to construct criteria queries, compound selections, expressions, predicates, orderings
+		CriteriaBuilder cb = em.getCriteriaBuilder();
+		//Used to construct all the criteria for our query
+		CriteriaQuery<StudentTest> criteriaQuery = cb.createQuery(StudentTest.class);
+		//Root object represents the "FROM" portion of a SELECT statement
+		Root<StudentTest> rootItem = criteriaQuery.from(StudentTest.class);
+		
+		try {
+			//Lets combine rootItem (FROM clause) with a WHERE clause
+			criteriaQuery = criteriaQuery.select(rootItem).where(lastNameMatches(cb, rootItem, lastName));
+			//Create our SELECT statement in a type safe way
+			TypedQuery<StudentTest> typedQuery = em.createQuery(criteriaQuery);
+			//Run query against database and get results
+			results = typedQuery.getResultList();
+			
+			//begin transaction
+			em.getTransaction().begin();
+			//loop through each record found in the database
+			//and delete it
+			for(StudentTest test : results) {
+				//delete record
+				em.remove(test);
+			}
+			//commit our deletes to the database
+			em.getTransaction().commit();
+		} catch(Exception e) {
+			successful = false;
+			System.out.println(e);
+		} finally {
+			//Be a good citizen: close the entity manager so you
+			//don't leave connections open to the database
+			em.close();
+		}
+		
+		return successful;
+	}
+	
+	/**
+	 * Builds a predicate that matches last names the way {@link LastNames} does,
+	 * by comparing the indexed key column. A null name never matches.
+	 */
+	private static Predicate lastNameMatches(CriteriaBuilder cb, Root<StudentTest> rootItem, String lastName) {
+		String key = LastNames.key(lastName);
+		//An empty OR is always false
+		if(key == null)
+			return cb.disjunction();
+		return cb.equal(rootItem.<String>get("lastNameKey"), key);
+	}
+	
+	/**
+	 * Builds a query for records by last name, ordered by id and starting after
+	 * {@code afterId} unless it is null.
+	 */
+	private static TypedQuery<StudentTest> createLastNameQuery(EntityManager em, String lastName, String afterId) {
+		//Used to construct criteria queries, compound selections, expressions, predicates, orderings
+		CriteriaBuilder cb = em.getCriteriaBuilder();
+		//Used to construct all the criteria for our query
+		CriteriaQuery<StudentTest> criteriaQuery = cb.createQuery(StudentTest.class);
+		//Root object represents the "FROM" portion of a SELECT statement
+		Root<StudentTest> rootItem = criteriaQuery.from(StudentTest.class);
+		
+		//List of Predicates to be ANDED together
+		List<Predicate> andedPredicates = new ArrayList<Predicate>();
+		andedPredicates.add(lastNameMatches(cb, rootItem, lastName));
+		if(afterId != null)
+			andedPredicates.add(cb.greaterThan(rootItem.<String>get("id"), afterId));
+		
+		//Lets combine rootItem (FROM clause) with a WHERE clause
+		criteriaQuery = criteriaQuery.select(rootItem).where(andedPredicates.toArray(new Predicate[andedPredicates.size()]));
+		//A stable order lets the query be read a page at a time
+		criteriaQuery.orderBy(cb.asc(rootItem.get("id")));
+		//Create our SELECT statement in a type safe way
+		return em.createQuery(criteriaQuery);
+	}
+	
+	/**
+	 * Builds a query for records belonging to any of several last name keys.
+	 */
+	private static TypedQuery<StudentTest> createLastNamesQuery(EntityManager em, Collection<String> lastNameKeys) {
+		//Used to construct criteria queries, compound selections, expressions, predicates, orderings
+		CriteriaBuilder cb = em.getCriteriaBuilder();
+		//Used to construct all the criteria for our query
+		CriteriaQuery<StudentTest> criteriaQuery = cb.createQuery(StudentTest.class);
+		//Root object represents the "FROM" portion of a SELECT statement
+		Root<StudentTest> rootItem = criteriaQuery.from(StudentTest.class);
+		
+		//Lets combine rootItem (FROM clause) with a WHERE ... IN (...) clause
+		criteriaQuery = criteriaQuery.select(rootItem).where(rootItem.<String>get("lastNameKey").in(lastNameKeys));
+		//Create our SELECT statement in a type safe way
+		return em.createQuery(criteriaQuery);
+	}
+	
+	/**
+	 * Builds a query for records on or after a date, ordered by id and starting
+	 * after {@code afterId} unless it is null.
+	 */
+	private static TypedQuery<StudentTest> createDateQuery(EntityManager em, Calendar testDate, String afterId) {
+		//Create a SELECT statement in a type safe way using JPQL
+		TypedQuery<StudentTest> typedQuery = em.createQuery("select st from StudentTest st where st.testDate >= :testDate"
+				+ (afterId == null ? "" : " and st.id > :afterId") + " order by st.id", StudentTest.class);
+		//Substitute parameters with actual data
+		typedQuery.setParameter("testDate", testDate);
+		if(afterId != null)
+			typedQuery.setParameter("afterId", afterId);
+		return typedQuery;
+	}
+	
+	/**
+	 * Builds a query for records within a range of scores, ordered by id and
+	 * starting after {@code afterId} unless it is null.
+	 */
+	private static TypedQuery<StudentTest> createScoreQuery(EntityManager em, BigDecimal minScore, BigDecimal maxScore, String afterId) {
+		//Create a SELECT statement in a type safe way using a Named Query
+		TypedQuery<StudentTest> typedQuery = em.createNamedQuery(afterId == null ? "QueryStudentTestByScore" : "QueryStudentTestByScoreAfterId", StudentTest.class);
+		//Substitute parameters with actual data
+		typedQuery.setParameter("minScore", minScore);
+		typedQuery.setParameter("maxScore", maxScore);
+		if(afterId != null)
+			typedQuery.setParameter("afterId", afterId);
+		return typedQuery;
+	}
+	
+	/**
+	 * Reads the records {@code query} builds in pages of {@link #STREAM_PAGE_SIZE},
+	 * handing each page to {@code consumer} only after its Entity Manager is closed.
+	 * A slow consumer, like a client reading a large response, then never holds a
+	 * database connection, so the pool can't run dry however many streams are open.
+	 *
+	 * Each page picks up after the last id of the one before, rather than skipping
+	 * rows with an offset, so the database seeks straight to it through the primary
+	 * key and records created or deleted along the way can't shift the pages.
+	 */
+	private void stream(BiFunction<EntityManager, String, TypedQuery<StudentTest>> query, Consumer<StudentTest> consumer) {
+		String afterId = null;
+		while(true) {
+			List<StudentTest> page;
+			//Manages persistence entities
+			EntityManager em = emf.createEntityManager();
+			
+			try {
+				TypedQuery<StudentTest> typedQuery = query.apply(em, afterId);
+				//We never modify what we stream, so don't let Hibernate snapshot it for dirty checking
+				typedQuery.setHint("org.hibernate.readOnly", true);
+				typedQuery.setMaxResults(STREAM_PAGE_SIZE);
+				page = typedQuery.getResultList();
+			} finally {
+				//Be a good citizen: close the entity manager so you
+				//don't leave connections open to the database
+				em.close();
+			}
+			
+			page.forEach(consumer);
+			if(page.size() < STREAM_PAGE_SIZE)
+				return;
+			afterId = page.get(page.size() - 1).getId();
+		}
+	}
+	
+	/**
+	 * Closes down the entity manager factory to free
+	 * up resources.
+	 */
+	@Override
+	public void close() {
+		emf.close();
+	}
+}
@@ -0,0 +1,37 @@
+package net.shazam.storage;
+
+import java.util.Locale;
+
+/**
+ * This class holds the one rule every {@code GradeStore} uses to decide whether
+ * two last names belong to the same student: their keys must be equal. A key is
+ * the name lower-cased without trailing spaces, so "Smith", "smith" and "Smith "
+ * all match, while accents and every other character still count. A null last
+ * name matches nothing.
+ *
+ * The embedded backend indexes its records by key. The JPA backend stores the key
+ * in the LAST_NAME_KEY column and compares it exactly (the column has a binary
+ * collation in MySQL), so the database's own collation rules never come into it.
+ * @author alexdrawbond
+ *
+ */
+public final class LastNames {
+
+	private LastNames() {
+	}
+
+	/**
+	 * Turns a last name into the key it is matched on.
+	 * @param lastName the last name as entered
+	 * @return the lower-cased name without trailing spaces, or null for a null name
+	 */
+	public static String key(String lastName) {
+		if(lastName == null)
+			return null;
+
+		int end = lastName.length();
+		while(end > 0 && lastName.charAt(end - 1) == ' ')
+			end--;
+		return lastName.substring(0, end).toLowerCase(Locale.ROOT);
+	}
+}
@@ -0,0 +1,737 @@
+package net.shazam.storage;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+import net.shazam.entities.StudentTest;
+
+/**
+ * This class is an embedded, single-file backend for our grades. Every change
+ * is appended to a log file as a checksummed record, while the current state
+ * of every test lives in memory along with indexes on last name, date and score.
+ *
+ * On startup the log is replayed to rebuild the indexes. A torn or corrupt record
+ * at the tail (left behind by a crash mid-write) ends the replay and is truncated
+ * away. A background thread compacts the log by rewriting only the live records
+ * once enough of the file is made up of overwritten or deleted records.
+ * @author alexdrawbond
+ *
+ */
+public class LogStructuredGradeStore implements GradeStore {
+	//Record types written to the log
+	private static final byte PUT = 1;
+	private static final byte DELETE = 2;
+	//Every record starts with its payload length and checksum
+	private static final int HEADER_SIZE = 8;
+	//Largest payload we write, so anything bigger found on recovery must be garbage
+	static final int MAX_PAYLOAD_SIZE = 64 * 1024;
+
+	//Don't bother compacting logs smaller than this
+	private static final long MIN_COMPACTION_SIZE = 1024 * 1024;
+	//Compact once less than this fraction of the log is live
+	private static final double MIN_LIVE_RATIO = 0.5;
+	//How often the background thread checks whether to compact
+	private static final long COMPACTION_INTERVAL_SECONDS = 30;
+	//How many records a stream resolves each time it takes the lock
+	private static final int STREAM_BATCH_SIZE = 256;
+
+	private final Path logFile;
+	private final Path compactFile;
+	//Force every write to disk before acknowledging it
+	private final boolean syncWrites;
+
+	//Guards the log channel and everything in memory
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	//Held for as long as the store is open so a second process can't share the file
+	private final FileChannel lockChannel;
+	private final FileLock fileLock;
+	private FileChannel log;
+	private long logSize;
+	private long liveBytes;
+	private long nextId = 1;
+	private boolean closed;
+
+	//Primary index: every live test by id
+	private final Map<Long, Row> rows = new HashMap<Long, Row>();
+	//Secondary indexes pointing back at ids, last names are keyed by LastNames.key()
+	private final Map<String, Set<Long>> byLastName = new HashMap<String, Set<Long>>();
+	private final NavigableMap<Integer, Set<Long>> byDate = new TreeMap<Integer, Set<Long>>();
+	private final NavigableMap<BigDecimal, Set<Long>> byScore = new TreeMap<BigDecimal, Set<Long>>();
+
+	private final ScheduledExecutorService compactor;
+	//Makes sure only one compaction runs at a time
+	private final Object compactionLock = new Object();
+
+	/**
+	 * Opens (or creates) a store in {@code file}, forcing every write to disk.
+	 * @param file the log file
+	 * @throws IOException if the file can't be opened or is in use by another process
+	 */
+	public LogStructuredGradeStore(File file) throws IOException {
+		this(file, true);
+	}
+
+	/**
+	 * Opens (or creates) a store in {@code file}.
+	 * @param file the log file
+	 * @param syncWrites whether every write is forced to disk before returning
+	 * @throws IOException if the file can't be opened or is in use by another process
+	 */
+	public LogStructuredGradeStore(File file, boolean syncWrites) throws IOException {
+		this.logFile = file.getAbsoluteFile().toPath();
+		this.compactFile = logFile.resolveSibling(logFile.getFileName() + ".compact");
+		this.syncWrites = syncWrites;
+
+		Path lockFile = logFile.resolveSibling(logFile.getFileName() + ".lock");
+		lockChannel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+		FileLock acquired;
+		try {
+			acquired = lockChannel.tryLock();
+		} catch(OverlappingFileLockException e) {
+			//Another store in this JVM already has the file open
+			acquired = null;
+		}
+		fileLock = acquired;
+		if(fileLock == null) {
+			lockChannel.close();
+			throw new IOException(logFile + " is already in use");
+		}
+
+		try {
+			//A leftover compaction file means we crashed before swapping it in,
+			//the original log is still complete so just throw it away
+			Files.deleteIfExists(compactFile);
+			log = FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			//The log may have just been created, make sure its directory entry survives a crash
+			syncDirectory();
+			recover();
+		} catch(IOException e) {
+			releaseFiles();
+			throw e;
+		}
+
+		compactor = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "graidtrax-compactor");
+			t.setDaemon(true);
+			return t;
+		});
+		compactor.scheduleWithFixedDelay(this::compactIfNeeded,
+				COMPACTION_INTERVAL_SECONDS, COMPACTION_INTERVAL_SECONDS, TimeUnit.SECONDS);
+	}
+
+	@Override
+	public boolean createTestRecord(String firstName, String lastName, BigDecimal score, Calendar testDate) {
+		boolean successful = true;
+
+		lock.writeLock().lock();
+		try {
+			Row row = new Row(nextId, firstName, lastName, toDateKey(testDate), score);
+			ByteBuffer record = row.encode(PUT);
+			row.size = record.remaining();
+			append(record);
+			put(row);
+		} catch(Exception e) {
+			successful = false;
+			System.out.println(e);
+		} finally {
+			lock.writeLock().unlock();
+		}
+
+		return successful;
+	}
+
+	@Override
+	public List<StudentTest> queryTestRecords(String lastName) {
+		lock.readLock().lock();
+		try {
+			return toStudentTests(idsByLastName(lastName));
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public Map<String, List<StudentTest>> queryTestRecords(Collection<String> lastNames) {
+		Map<String, List<StudentTest>> results = new LinkedHashMap<String, List<StudentTest>>();
+		lock.readLock().lock();
+		try {
+			for(String lastName : lastNames) {
+				if(lastName != null && !results.containsKey(lastName))
+					results.put(lastName, toStudentTests(idsByLastName(lastName)));
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+		return results;
+	}
+
+	@Override
+	public List<StudentTest> queryTestRecords(Calendar testDate) {
+		lock.readLock().lock();
+		try {
+			return toStudentTests(idsByDate(testDate));
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public List<StudentTest> queryTestRecords(BigDecimal minScore, BigDecimal maxScore) {
+		lock.readLock().lock();
+		try {
+			return toStudentTests(idsByScore(minScore, maxScore));
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public void streamTestRecords(String lastName, Consumer<StudentTest> consumer) {
+		List<Long> ids;
+		lock.readLock().lock();
+		try {
+			ids = idsByLastName(lastName);
+		} finally {
+			lock.readLock().unlock();
+		}
+		stream(ids, consumer);
+	}
+
+	@Override
+	public void streamTestRecords(Calendar testDate, Consumer<StudentTest> consumer) {
+		List<Long> ids;
+		lock.readLock().lock();
+		try {
+			ids = idsByDate(testDate);
+		} finally {
+			lock.readLock().unlock();
+		}
+		stream(ids, consumer);
+	}
+
+	@Override
+	public void streamTestRecords(BigDecimal minScore, BigDecimal maxScore, Consumer<StudentTest> consumer) {
+		List<Long> ids;
+		lock.readLock().lock();
+		try {
+			ids = idsByScore(minScore, maxScore);
+		} finally {
+			lock.readLock().unlock();
+		}
+		stream(ids, consumer);
+	}
+
+	@Override
+	public boolean updateTestRecords(String lastName, Calendar testDate, BigDecimal score) {
+		boolean successful = false;
+
+		lock.writeLock().lock();
+		try {
+			Integer dateKey = toDateKey(testDate);
+			//idsByLastName() hands back a copy, so put() can rewrite the index as we go
+			for(Long id : idsByLastName(lastName)) {
+				Row row = rows.get(id);
+				//Like the database, a missing date never equals anything
+				if(dateKey == null || !dateKey.equals(row.dateKey))
+					continue;
+				Row updated = new Row(row.id, row.firstName, row.lastName, row.dateKey, score);
+				ByteBuffer record = updated.encode(PUT);
+				updated.size = record.remaining();
+				append(record);
+				put(updated);
+				successful = true;
+			}
+		} catch(Exception e) {
+			System.out.println(e);
+		} finally {
+			lock.writeLock().unlock();
+		}
+
+		return successful;
+	}
+
+	@Override
+	public boolean deleteTestRecordsByLastName(String lastName) {
+		boolean successful = true;
+
+		lock.writeLock().lock();
+		try {
+			for(Long id : idsByLastName(lastName)) {
+				append(Row.encodeDelete(id));
+				remove(id);
+			}
+		} catch(Exception e) {
+			successful = false;
+			System.out.println(e);
+		} finally {
+			lock.writeLock().unlock();
+		}
+
+		return successful;
+	}
+
+	/**
+	 * Rewrites the log so it only contains live records. Safe to call at any time,
+	 * the background thread calls it on its own once the log is mostly garbage.
+	 *
+	 * The live records are written out from a snapshot without holding the lock,
+	 * so readers and writers carry on while the new file is built. The lock is only
+	 * taken at the end to copy over anything appended in the meantime and swap
+	 * the files.
+	 * @throws IOException if the compacted log can't be written
+	 */
+	public void compact() throws IOException {
+		synchronized(compactionLock) {
+			List<Row> snapshot;
+			long snapshotSize;
+			lock.readLock().lock();
+			try {
+				if(closed)
+					return;
+				snapshot = new ArrayList<Row>(rows.values());
+				snapshotSize = logSize;
+			} finally {
+				lock.readLock().unlock();
+			}
+
+			long compactedSize = 0;
+			try(FileChannel out = FileChannel.open(compactFile, StandardOpenOption.CREATE,
+					StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+				for(Row row : snapshot) {
+					ByteBuffer record = row.encode(PUT);
+					int recordSize = record.remaining();
+					writeFully(out, record, compactedSize);
+					compactedSize += recordSize;
+				}
+				out.force(true);
+			}
+
+			lock.writeLock().lock();
+			try {
+				if(closed) {
+					Files.deleteIfExists(compactFile);
+					return;
+				}
+
+				//Records appended since the snapshot replay on top of it, so copy them across as they are
+				long tailSize = logSize - snapshotSize;
+				try(FileChannel out = FileChannel.open(compactFile, StandardOpenOption.WRITE)) {
+					out.position(compactedSize);
+					long copied = 0;
+					while(copied < tailSize)
+						copied += log.transferTo(snapshotSize + copied, tailSize - copied, out);
+					out.force(true);
+				}
+
+				//The rename is atomic, so after a crash we either have the old log or the new one
+				log.close();
+				try {
+					Files.move(compactFile, logFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+				} finally {
+					//Whether or not the swap worked, keep appending to whatever is at logFile now
+					log = FileChannel.open(logFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+				}
+				//Make the rename itself durable, or a crash could bring back the old log
+				//and lose everything appended to the new one
+				syncDirectory();
+				logSize = compactedSize + tailSize;
+			} finally {
+				lock.writeLock().unlock();
+			}
+		}
+	}
+
+	/**
+	 * Stops the compaction thread and closes the log file.
+	 */
+	@Override
+	public void close() {
+		compactor.shutdown();
+		lock.writeLock().lock();
+		try {
+			if(closed)
+				return;
+			closed = true;
+			releaseFiles();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	//Called by the background thread
+	private void compactIfNeeded() {
+		boolean needed;
+		lock.readLock().lock();
+		try {
+			needed = !closed && logSize >= MIN_COMPACTION_SIZE && liveBytes < logSize * MIN_LIVE_RATIO;
+		} finally {
+			lock.readLock().unlock();
+		}
+
+		if(needed) {
+			try {
+				compact();
+			} catch(IOException | RuntimeException e) {
+				//Anything thrown out of here would cancel the schedule and we'd never compact again
+				System.out.println(e);
+			}
+		}
+	}
+
+	/**
+	 * Replays the log into memory. Stops at the first record that is cut short
+	 * or fails its checksum and truncates the file there.
+	 */
+	private void recover() throws IOException {
+		long validSize = 0;
+		long fileSize = log.size();
+		InputStream in = new BufferedInputStream(Channels.newInputStream(log.position(0)));
+		DataInputStream din = new DataInputStream(in);
+		CRC32 crc = new CRC32();
+
+		while(validSize + HEADER_SIZE <= fileSize) {
+			int length = din.readInt();
+			int checksum = din.readInt();
+			if(length <= 0 || length > MAX_PAYLOAD_SIZE || validSize + HEADER_SIZE + length > fileSize)
+				break;
+
+			byte[] payload = new byte[length];
+			din.readFully(payload);
+			crc.reset();
+			crc.update(payload, 0, length);
+			if((int) crc.getValue() != checksum)
+				break;
+
+			long recordSize = HEADER_SIZE + length;
+			try {
+				replay(payload, recordSize);
+			} catch(IOException | RuntimeException e) {
+				//Checksum matched but the payload is malformed, treat it like corruption
+				break;
+			}
+			validSize += recordSize;
+		}
+
+		if(validSize < fileSize) {
+			System.out.println("Truncating " + (fileSize - validSize) + " bytes of incomplete log records from " + logFile);
+			log.truncate(validSize);
+			log.force(true);
+		}
+		logSize = validSize;
+	}
+
+	private void replay(byte[] payload, long recordSize) throws IOException {
+		DataInputStream din = new DataInputStream(new ByteArrayInputStream(payload));
+		byte type = din.readByte();
+		long id = din.readLong();
+		nextId = Math.max(nextId, id + 1);
+
+		if(type == PUT) {
+			String firstName = readNullableString(din);
+			String lastName = readNullableString(din);
+			Integer dateKey = din.readBoolean() ? din.readInt() : null;
+			String score = readNullableString(din);
+			Row row = new Row(id, firstName, lastName, dateKey, score == null ? null : new BigDecimal(score));
+			row.size = recordSize;
+			logSize += recordSize;
+			put(row);
+		} else if(type == DELETE) {
+			logSize += recordSize;
+			remove(id);
+		} else {
+			throw new IOException("Unknown record type " + type);
+		}
+	}
+
+	/**
+	 * Appends a record to the end of the log. Must hold the write lock.
+	 */
+	private void append(ByteBuffer record) throws IOException {
+		if(closed)
+			throw new IllegalStateException("Store is closed");
+		long size = record.remaining();
+		try {
+			writeFully(log, record, logSize);
+			if(syncWrites)
+				log.force(false);
+		} catch(IOException e) {
+			//Drop whatever part of the record made it to disk so the log stays clean
+			log.truncate(logSize);
+			throw e;
+		}
+		logSize += size;
+	}
+
+	/**
+	 * Forces the directory holding the log to disk so creates and renames survive a crash.
+	 */
+	private void syncDirectory() {
+		try(FileChannel directory = FileChannel.open(logFile.getParent(), StandardOpenOption.READ)) {
+			directory.force(true);
+		} catch(IOException e) {
+			//Some platforms (Windows) can't open a directory, there is nothing more we can do there
+		}
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while(buffer.hasRemaining())
+			position += channel.write(buffer, position);
+	}
+
+	/**
+	 * Adds or replaces a row in memory. Must hold the write lock.
+	 */
+	private void put(Row row) {
+		Row previous = rows.put(row.id, row);
+		if(previous != null) {
+			liveBytes -= previous.size;
+			unindex(previous);
+		}
+		liveBytes += row.size;
+		index(byLastName, LastNames.key(row.lastName), row.id);
+		//Tests without a date or score are never found by date or score, just like in SQL
+		if(row.dateKey != null)
+			index(byDate, row.dateKey, row.id);
+		if(row.score != null)
+			index(byScore, row.score, row.id);
+		nextId = Math.max(nextId, row.id + 1);
+	}
+
+	/**
+	 * Removes a row from memory. Must hold the write lock.
+	 */
+	private void remove(long id) {
+		Row previous = rows.remove(id);
+		if(previous != null) {
+			liveBytes -= previous.size;
+			unindex(previous);
+		}
+	}
+
+	private void unindex(Row row) {
+		unindex(byLastName, LastNames.key(row.lastName), row.id);
+		if(row.dateKey != null)
+			unindex(byDate, row.dateKey, row.id);
+		if(row.score != null)
+			unindex(byScore, row.score, row.id);
+	}
+
+	private static <K> void index(Map<K, Set<Long>> index, K key, long id) {
+		Set<Long> ids = index.get(key);
+		if(ids == null) {
+			ids = new LinkedHashSet<Long>();
+			index.put(key, ids);
+		}
+		ids.add(id);
+	}
+
+	private static <K> void unindex(Map<K, Set<Long>> index, K key, long id) {
+		Set<Long> ids = index.get(key);
+		if(ids != null) {
+			ids.remove(id);
+			if(ids.isEmpty())
+				index.remove(key);
+		}
+	}
+
+	/**
+	 * Looks up ids in the indexes. Must hold the read lock.
+	 */
+	private List<Long> idsByLastName(String lastName) {
+		//A null name matches nothing, not the tests stored without a last name
+		Set<Long> ids = lastName == null ? null : byLastName.get(LastNames.key(lastName));
+		return ids == null ? new ArrayList<Long>() : new ArrayList<Long>(ids);
+	}
+
+	private List<Long> idsByDate(Calendar testDate) {
+		List<Long> ids = new ArrayList<Long>();
+		if(testDate == null)
+			return ids;
+		for(Set<Long> idsOnDate : byDate.tailMap(toDateKey(testDate), true).values())
+			ids.addAll(idsOnDate);
+		return ids;
+	}
+
+	private List<Long> idsByScore(BigDecimal minScore, BigDecimal maxScore) {
+		List<Long> ids = new ArrayList<Long>();
+		if(minScore != null && maxScore != null && minScore.compareTo(maxScore) <= 0) {
+			for(Set<Long> idsWithScore : byScore.subMap(minScore, true, maxScore, true).values())
+				ids.addAll(idsWithScore);
+		}
+		return ids;
+	}
+
+	/**
+	 * Resolves {@code ids} a batch at a time and hands the records to {@code consumer}
+	 * without holding the lock, so a slow consumer never blocks writers. Records
+	 * deleted after the ids were collected are skipped.
+	 */
+	private void stream(List<Long> ids, Consumer<StudentTest> consumer) {
+		for(int from = 0; from < ids.size(); from += STREAM_BATCH_SIZE) {
+			List<StudentTest> batch;
+			lock.readLock().lock();
+			try {
+				batch = toStudentTests(ids.subList(from, Math.min(from + STREAM_BATCH_SIZE, ids.size())));
+			} finally {
+				lock.readLock().unlock();
+			}
+			batch.forEach(consumer);
+		}
+	}
+
+	/**
+	 * Hands out copies so callers can't change our in-memory state behind our back.
+	 * Must hold the read lock.
+	 */
+	private List<StudentTest> toStudentTests(Collection<Long> ids) {
+		List<StudentTest> results = new ArrayList<StudentTest>(ids.size());
+		for(Long id : ids) {
+			Row row = rows.get(id);
+			if(row != null)
+				results.add(row.toStudentTest());
+		}
+		return results;
+	}
+
+	private void releaseFiles() {
+		try {
+			if(log != null)
+				log.close();
+		} catch(IOException e) {
+			System.out.println(e);
+		}
+		try {
+			fileLock.release();
+			lockChannel.close();
+		} catch(IOException e) {
+			System.out.println(e);
+		}
+	}
+
+	/**
+	 * Tests are stored by day, just like the DATE column in the database,
+	 * so we key them as yyyyMMdd and ignore the time of day.
+	 */
+	static Integer toDateKey(Calendar date) {
+		if(date == null)
+			return null;
+		return date.get(Calendar.YEAR) * 10000 + (date.get(Calendar.MONTH) + 1) * 100 + date.get(Calendar.DATE);
+	}
+
+	static Calendar fromDateKey(Integer dateKey) {
+		if(dateKey == null)
+			return null;
+		Calendar date = Calendar.getInstance();
+		date.clear();
+		date.set(dateKey / 10000, (dateKey / 100) % 100 - 1, dateKey % 100);
+		return date;
+	}
+
+	private static String readNullableString(DataInputStream din) throws IOException {
+		return din.readBoolean() ? din.readUTF() : null;
+	}
+
+	private static void writeNullableString(DataOutputStream dout, String value) throws IOException {
+		dout.writeBoolean(value != null);
+		if(value != null)
+			dout.writeUTF(value);
+	}
+
+	/**
+	 * An immutable snapshot of one test as it is stored in the log.
+	 */
+	private static final class Row {
+		final long id;
+		final String firstName;
+		final String lastName;
+		//Either may be null, the database allows tests without a date or score
+		final Integer dateKey;
+		final BigDecimal score;
+		//Bytes this row takes up in the log, used to decide when to compact.
+		//Set under the write lock before the row is published
+		long size;
+
+		Row(long id, String firstName, String lastName, Integer dateKey, BigDecimal score) {
+			this.id = id;
+			this.firstName = firstName;
+			this.lastName = lastName;
+			this.dateKey = dateKey;
+			this.score = score;
+		}
+
+		StudentTest toStudentTest() {
+			StudentTest test = new StudentTest(firstName, lastName, score, fromDateKey(dateKey));
+			test.setId(String.valueOf(id));
+			test.setLastNameKey(LastNames.key(lastName));
+			return test;
+		}
+
+		ByteBuffer encode(byte type) throws IOException {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+			DataOutputStream dout = new DataOutputStream(bytes);
+			dout.writeByte(type);
+			dout.writeLong(id);
+			writeNullableString(dout, firstName);
+			writeNullableString(dout, lastName);
+			dout.writeBoolean(dateKey != null);
+			if(dateKey != null)
+				dout.writeInt(dateKey);
+			writeNullableString(dout, score == null ? null : score.toString());
+			//recover() takes anything bigger for garbage and would cut it off along with
+			//everything after it, so refuse to write it in the first place
+			if(bytes.size() > MAX_PAYLOAD_SIZE)
+				throw new IllegalArgumentException("Record is " + bytes.size() + " bytes, the most a record can hold is " + MAX_PAYLOAD_SIZE);
+			return frame(bytes.toByteArray());
+		}
+
+		static ByteBuffer encodeDelete(long id) {
+			ByteBuffer payload = ByteBuffer.allocate(9);
+			payload.put(DELETE).putLong(id);
+			return frame(payload.array());
+		}
+
+		//Prefix the payload with its length and checksum
+		private static ByteBuffer frame(byte[] payload) {
+			CRC32 crc = new CRC32();
+			crc.update(payload, 0, payload.length);
+			ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + payload.length);
+			record.putInt(payload.length).putInt((int) crc.getValue()).put(payload);
+			record.flip();
+			return record;
+		}
+	}
+}
@@ -0,0 +1,405 @@
+package net.shazam.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.shazam.backingbeans.GradesBean;
+import net.shazam.entities.StudentTest;
+import net.shazam.storage.GradeStore;
+
+/**
+ * Tests for what the HTTP server sends back for each endpoint, when the store
+ * fails before or part way through a streamed query, and once too many
+ * requests are in flight.
+ * @author alexdrawbond
+ *
+ */
+public class GradesHttpServerTest {
+	//Low enough that a test can fill it
+	private static final int MAX_IN_FLIGHT = 2;
+
+	private StubGradeStore store;
+	private GradesHttpServer server;
+
+	@Before
+	public void setUp() throws IOException {
+		store = new StubGradeStore();
+		server = new GradesHttpServer(new GradesBean(store), 0, MAX_IN_FLIGHT);
+		server.start();
+	}
+
+	@After
+	public void tearDown() {
+		server.stop();
+	}
+
+	@Test
+	public void parseDateAcceptsRealDates() {
+		Calendar date = GradesHttpServer.parseDate("2020-02-29");
+
+		assertEquals(2020, date.get(Calendar.YEAR));
+		assertEquals(Calendar.FEBRUARY, date.get(Calendar.MONTH));
+		assertEquals(29, date.get(Calendar.DATE));
+	}
+
+	@Test
+	public void parseDateRejectsDatesThatDoNotExist() {
+		assertRejected("2020-13-45");
+		assertRejected("2019-02-29");
+		assertRejected("2020-00-10");
+		assertRejected("2020-01");
+		assertRejected("2020-Jan-01");
+	}
+
+	@Test
+	public void badDateIsABadRequest() throws IOException {
+		assertEquals(400, get("/tests?date=2020-13-45").status);
+	}
+
+	@Test
+	public void recordsComeBackOneJsonObjectPerLine() throws IOException {
+		store.tests.add(new StudentTest("Ann", "Smith", new BigDecimal("91.5"), date(2017, 2, 11)));
+		store.tests.add(new StudentTest("Bo", "Smith", null, date(2017, 2, 12)));
+
+		Response response = get("/tests?lastName=Smith");
+
+		assertEquals(200, response.status);
+		assertEquals(2, response.lines.size());
+		assertEquals("{\"id\":null,\"firstName\":\"Ann\",\"lastName\":\"Smith\",\"testDate\":\"2017-02-11\",\"score\":91.5}",
+				response.lines.get(0));
+		assertTrue(response.lines.get(1).contains("\"score\":null"));
+	}
+
+	@Test
+	public void emptyResultIsAnEmptyOk() throws IOException {
+		Response response = get("/tests?minScore=0&maxScore=100");
+
+		assertEquals(200, response.status);
+		assertTrue(response.lines.isEmpty());
+		assertMetrics("\"requests\":1,", "\"serverErrors\":0,");
+	}
+
+	@Test
+	public void storeFailingBeforeAnyRecordIsAServerError() throws IOException {
+		store.tests = null;
+
+		Response response = get("/tests?date=2017-02-11");
+
+		assertEquals(500, response.status);
+		assertTrue(response.lines.get(0).startsWith("{\"error\":"));
+		assertMetrics("\"requests\":1,", "\"serverErrors\":1,");
+	}
+
+	@Test
+	public void storeFailingPartWayEndsTheStreamWithAnError() throws IOException {
+		for(int i = 0; i < 3; i++)
+			store.tests.add(new StudentTest("Student" + i, "Smith", BigDecimal.ONE, date(2017, 2, 11)));
+		store.failAfter = 2;
+
+		Response response = get("/tests?lastName=Smith");
+
+		//The status was already sent with the first record
+		assertEquals(200, response.status);
+		assertEquals(3, response.lines.size());
+		assertTrue(response.lines.get(1).contains("\"firstName\":\"Student1\""));
+		assertEquals("{\"error\":\"disk on fire\"}", response.lines.get(2));
+		assertMetrics("\"requests\":1,", "\"serverErrors\":1,");
+	}
+
+	@Test
+	public void requestsPastTheLimitAreTurnedAway() throws Exception {
+		store.entered = new CountDownLatch(MAX_IN_FLIGHT);
+		store.release = new CountDownLatch(1);
+
+		//Fill every slot with a query the store holds on to
+		List<Thread> blocked = new ArrayList<Thread>();
+		List<Response> blockedResponses = Collections.synchronizedList(new ArrayList<Response>());
+		for(int i = 0; i < MAX_IN_FLIGHT; i++) {
+			Thread thread = new Thread(() -> {
+				try {
+					blockedResponses.add(get("/tests?date=2017-02-11"));
+				} catch(IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+			thread.start();
+			blocked.add(thread);
+		}
+		assertTrue(store.entered.await(5, TimeUnit.SECONDS));
+
+		Response rejected = get("/tests?date=2017-02-11");
+		assertEquals(503, rejected.status);
+		assertTrue(rejected.lines.get(0).startsWith("{\"error\":"));
+
+		store.release.countDown();
+		for(Thread thread : blocked)
+			thread.join(5000);
+		assertEquals(MAX_IN_FLIGHT, blockedResponses.size());
+		for(Response response : blockedResponses)
+			assertEquals(200, response.status);
+		assertMetrics("\"requests\":" + MAX_IN_FLIGHT + ",", "\"rejected\":1,", "\"inFlight\":0,");
+
+		//Slots are given back once the requests finish
+		assertEquals(200, get("/tests?date=2017-02-11").status);
+	}
+
+	@Test
+	public void createIsCreated() throws IOException {
+		Response response = request("POST", "/tests", "firstName=Ann&lastName=Smith&score=91.5&date=2017-02-11");
+
+		assertEquals(201, response.status);
+		assertEquals("{\"successful\":true}", response.lines.get(0));
+		StudentTest created = store.created.get(0);
+		assertEquals("Ann", created.getFirstName());
+		assertEquals("Smith", created.getLastName());
+		assertEquals(new BigDecimal("91.5"), created.getScore());
+		assertEquals(11, created.getTestDate().get(Calendar.DATE));
+	}
+
+	@Test
+	public void createTheStoreRefusesIsAServerError() throws IOException {
+		store.writesSucceed = false;
+
+		Response response = request("POST", "/tests", "firstName=Ann&lastName=Smith&score=91.5&date=2017-02-11");
+
+		assertEquals(500, response.status);
+		assertEquals("{\"successful\":false}", response.lines.get(0));
+	}
+
+	@Test
+	public void createWithAMissingOrBadFieldIsABadRequest() throws IOException {
+		assertEquals(400, request("POST", "/tests", "firstName=Ann&lastName=Smith&date=2017-02-11").status);
+		assertEquals(400, request("POST", "/tests", "firstName=Ann&lastName=Smith&score=high&date=2017-02-11").status);
+		assertTrue(store.created.isEmpty());
+	}
+
+	@Test
+	public void updateIsOkOrNotFound() throws IOException {
+		assertEquals(200, request("PUT", "/tests", "lastName=Smith&date=2017-02-11&score=95").status);
+
+		store.writesSucceed = false;
+		Response response = request("PUT", "/tests", "lastName=Smith&date=2017-02-11&score=95");
+		assertEquals(404, response.status);
+		assertEquals("{\"successful\":false}", response.lines.get(0));
+	}
+
+	@Test
+	public void deleteIsOkOrAServerError() throws IOException {
+		assertEquals(200, request("DELETE", "/tests?lastName=Smith", null).status);
+
+		store.writesSucceed = false;
+		assertEquals(500, request("DELETE", "/tests?lastName=Smith", null).status);
+		assertEquals(400, request("DELETE", "/tests", null).status);
+	}
+
+	@Test
+	public void otherMethodsAreNotAllowed() throws IOException {
+		Response tests = request("OPTIONS", "/tests", null);
+		assertEquals(405, tests.status);
+		assertEquals("GET, POST, PUT, DELETE", tests.allow);
+
+		Response reportCards = request("POST", "/report-cards", "lastName=Smith");
+		assertEquals(405, reportCards.status);
+		assertEquals("GET", reportCards.allow);
+	}
+
+	@Test
+	public void reportCardsComeBackInTheOrderAsked() throws IOException {
+		store.tests.add(new StudentTest("Ann", "Smith", new BigDecimal("80"), date(2017, 2, 11)));
+		store.tests.add(new StudentTest("Ann", "Smith", new BigDecimal("91"), date(2017, 2, 12)));
+
+		Response response = get("/report-cards?lastName=Smith&lastName=Jones&lastName=Smith");
+
+		assertEquals(200, response.status);
+		assertEquals(2, response.lines.size());
+		assertEquals("{\"firstName\":\"Ann\",\"lastName\":\"Smith\",\"testCount\":2,\"averageScore\":85.50,"
+				+ "\"lowestScore\":80,\"highestScore\":91,\"latestScore\":91,\"latestTestDate\":\"2017-02-12\"}", response.lines.get(0));
+		assertTrue(response.lines.get(1).contains("\"lastName\":\"Jones\""));
+	}
+
+	@Test
+	public void reportCardsNeedALastName() throws IOException {
+		assertEquals(400, get("/report-cards").status);
+	}
+
+	@Test
+	public void reportCardsTheStoreFailsOnAreAServerError() throws IOException {
+		store.tests = null;
+
+		assertEquals(500, get("/report-cards?lastName=Smith").status);
+	}
+
+	private static void assertRejected(String date) {
+		try {
+			GradesHttpServer.parseDate(date);
+			fail("Expected " + date + " to be rejected");
+		} catch(IllegalArgumentException e) {
+			assertTrue(e.getMessage().startsWith("Dates must be yyyy-MM-dd"));
+		}
+	}
+
+	//Requests are counted just after the response is closed, so give the server a moment to catch up
+	private void assertMetrics(String... expected) throws IOException {
+		String json = null;
+		for(int attempt = 0; attempt < 50; attempt++) {
+			json = get("/metrics").lines.get(0);
+			if(containsAll(json, expected))
+				return;
+			try {
+				Thread.sleep(100);
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+		fail(json);
+	}
+
+	private static boolean containsAll(String json, String... expected) {
+		for(String part : expected) {
+			if(!json.contains(part))
+				return false;
+		}
+		return true;
+	}
+
+	private Response get(String path) throws IOException {
+		return request("GET", path, null);
+	}
+
+	private Response request(String method, String path, String formBody) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + server.getPort() + path).openConnection();
+		try {
+			connection.setRequestMethod(method);
+			if(formBody != null) {
+				connection.setDoOutput(true);
+				connection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
+				try(OutputStream out = connection.getOutputStream()) {
+					out.write(formBody.getBytes(StandardCharsets.UTF_8));
+				}
+			}
+
+			Response response = new Response();
+			response.status = connection.getResponseCode();
+			response.allow = connection.getHeaderField("Allow");
+			InputStream body = response.status < 400 ? connection.getInputStream() : connection.getErrorStream();
+			try(BufferedReader in = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8))) {
+				String line;
+				while((line = in.readLine()) != null)
+					response.lines.add(line);
+			}
+			return response;
+		} finally {
+			connection.disconnect();
+		}
+	}
+
+	private static Calendar date(int year, int month, int day) {
+		Calendar date = Calendar.getInstance();
+		date.clear();
+		date.set(year, month - 1, day);
+		return date;
+	}
+
+	private static class Response {
+		int status;
+		String allow;
+		List<String> lines = new ArrayList<String>();
+	}
+
+	/**
+	 * Hands back the same tests for every query, or fails like a broken backend:
+	 * a null list fails a query outright, and {@code failAfter} makes a stream
+	 * by last name throw after that many records. Writes report {@code writesSucceed}.
+	 * When {@code release} is set, queries by date wait for it so tests can keep
+	 * requests in flight.
+	 */
+	private static class StubGradeStore implements GradeStore {
+		volatile List<StudentTest> tests = new ArrayList<StudentTest>();
+		volatile int failAfter = -1;
+		volatile boolean writesSucceed = true;
+		final List<StudentTest> created = Collections.synchronizedList(new ArrayList<StudentTest>());
+		volatile CountDownLatch entered;
+		volatile CountDownLatch release;
+
+		@Override
+		public boolean createTestRecord(String firstName, String lastName, BigDecimal score, Calendar testDate) {
+			if(writesSucceed)
+				created.add(new StudentTest(firstName, lastName, score, testDate));
+			return writesSucceed;
+		}
+
+		@Override
+		public List<StudentTest> queryTestRecords(String lastName) {
+			return tests;
+		}
+
+		@Override
+		public List<StudentTest> queryTestRecords(Calendar testDate) {
+			if(release != null) {
+				entered.countDown();
+				try {
+					release.await();
+				} catch(InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			return tests;
+		}
+
+		@Override
+		public List<StudentTest> queryTestRecords(BigDecimal minScore, BigDecimal maxScore) {
+			return tests;
+		}
+
+		@Override
+		public void streamTestRecords(String lastName, Consumer<StudentTest> consumer) {
+			if(failAfter < 0) {
+				GradeStore.super.streamTestRecords(lastName, consumer);
+				return;
+			}
+			for(int i = 0; i < tests.size(); i++) {
+				if(i == failAfter)
+					throw new IllegalStateException("disk on fire");
+				consumer.accept(tests.get(i));
+			}
+		}
+
+		@Override
+		public boolean updateTestRecords(String lastName, Calendar testDate, BigDecimal score) {
+			return writesSucceed;
+		}
+
+		@Override
+		public boolean deleteTestRecordsByLastName(String lastName) {
+			return writesSucceed;
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+}
@@ -0,0 +1,77 @@
+package net.shazam.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Tests for the latency histogram behind /metrics.
+ * @author alexdrawbond
+ *
+ */
+public class RequestMetricsTest {
+
+	@Test
+	public void percentileOfNothingIsZero() {
+		assertEquals(0, RequestMetrics.percentile(new long[RequestMetrics.BUCKETS], 0.99));
+	}
+
+	@Test
+	public void percentileIsTheUpperBoundOfItsBucket() {
+		long[] counts = new long[RequestMetrics.BUCKETS];
+		//90 requests in [8, 16) micros and 10 in [512, 1024)
+		counts[3] = 90;
+		counts[9] = 10;
+
+		assertEquals(16, RequestMetrics.percentile(counts, 0.50));
+		assertEquals(16, RequestMetrics.percentile(counts, 0.90));
+		assertEquals(1024, RequestMetrics.percentile(counts, 0.91));
+		assertEquals(1024, RequestMetrics.percentile(counts, 0.99));
+	}
+
+	@Test
+	public void recordedLatenciesShowUpInTheJson() {
+		RequestMetrics metrics = new RequestMetrics();
+		for(int i = 0; i < 90; i++)
+			metrics.record(200, TimeUnit.MICROSECONDS.toNanos(10));
+		for(int i = 0; i < 10; i++)
+			metrics.record(200, TimeUnit.MICROSECONDS.toNanos(1000));
+
+		String json = metrics.toJson(3);
+		assertTrue(json, json.contains("\"requests\":100,"));
+		assertTrue(json, json.contains("\"inFlight\":3,"));
+		assertTrue(json, json.contains("\"meanMicros\":109,"));
+		assertTrue(json, json.contains("\"p50Micros\":16,"));
+		assertTrue(json, json.contains("\"p99Micros\":1024,"));
+		assertTrue(json, json.contains("\"maxMicros\":1000}"));
+	}
+
+	@Test
+	public void onlyServerErrorsAndRejectionsAreCountedAsSuch() {
+		RequestMetrics metrics = new RequestMetrics();
+		metrics.record(200, 1000);
+		metrics.record(404, 1000);
+		metrics.record(500, 1000);
+		metrics.record(503, 1000);
+		metrics.reject();
+
+		String json = metrics.toJson(0);
+		assertTrue(json, json.contains("\"requests\":4,"));
+		assertTrue(json, json.contains("\"serverErrors\":2,"));
+		assertTrue(json, json.contains("\"rejected\":1,"));
+	}
+
+	@Test
+	public void extremeLatenciesLandInTheEndBuckets() {
+		RequestMetrics fast = new RequestMetrics();
+		fast.record(200, 10);
+		assertTrue(fast.toJson(0).contains("\"p50Micros\":2,"));
+
+		RequestMetrics slow = new RequestMetrics();
+		slow.record(200, Long.MAX_VALUE);
+		assertTrue(slow.toJson(0).contains("\"p50Micros\":" + (1L << RequestMetrics.BUCKETS) + ","));
+	}
+}
@@ -0,0 +1,207 @@
+package net.shazam.reports;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+import net.shazam.backingbeans.GradesBean;
+import net.shazam.entities.StudentTest;
+import net.shazam.storage.GradeStore;
+
+/**
+ * Tests for splitting a roster into batches and students, and bounding how many
+ * batches are looked up at once.
+ * @author alexdrawbond
+ *
+ */
+public class ReportCardGeneratorTest {
+	private final CountingGradeStore store = new CountingGradeStore();
+	private ReportCardGenerator generator;
+
+	@After
+	public void tearDown() {
+		generator.shutdown();
+	}
+
+	@Test
+	public void reportCardsFollowTheRosterAcrossBatches() {
+		generator = new ReportCardGenerator(new GradesBean(store), 3, 4);
+		List<String> roster = new ArrayList<String>();
+		for(int i = 0; i < 20; i++)
+			roster.add("Family" + i);
+		//Duplicates and nulls are dropped
+		roster.add("Family3");
+		roster.add(null);
+
+		List<ReportCard> reportCards = generator.generate(roster);
+
+		assertEquals(20, reportCards.size());
+		for(int i = 0; i < 20; i++) {
+			assertEquals("Family" + i, reportCards.get(i).getLastName());
+			assertEquals(1, reportCards.get(i).getTestCount());
+		}
+		assertEquals(7, store.lookups.get());
+	}
+
+	@Test
+	public void studentsSharingALastNameGetTheirOwnCards() {
+		store.testsByName.put("Smith", Arrays.asList(
+				test("Bo", "Smith", "60", 11),
+				test("Ann", "Smith", "80", 12),
+				test("ann ", "SMITH", "90", 13)));
+		store.testsByName.put("Jones", new ArrayList<StudentTest>());
+		generator = new ReportCardGenerator(new GradesBean(store));
+
+		List<ReportCard> reportCards = generator.generate(Arrays.asList("Smith", "Jones"));
+
+		assertEquals(3, reportCards.size());
+		ReportCard ann = reportCards.get(0);
+		assertEquals("ann ", ann.getFirstName());
+		assertEquals("Smith", ann.getLastName());
+		assertEquals(2, ann.getTestCount());
+		assertEquals(new BigDecimal("85.00"), ann.getAverageScore());
+		ReportCard bo = reportCards.get(1);
+		assertEquals("Bo", bo.getFirstName());
+		assertEquals(1, bo.getTestCount());
+		assertEquals(new BigDecimal("60.00"), bo.getAverageScore());
+		ReportCard jones = reportCards.get(2);
+		assertEquals("Jones", jones.getLastName());
+		assertEquals(0, jones.getTestCount());
+	}
+
+	@Test
+	public void concurrencyIsBoundedAcrossCallers() throws Exception {
+		store.delayMillis = 20;
+		generator = new ReportCardGenerator(new GradesBean(store), 1, 2);
+
+		//Four rosters of five batches each, all at once
+		ExecutorService callers = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<List<ReportCard>>> futures = new ArrayList<Future<List<ReportCard>>>();
+			for(int caller = 0; caller < 4; caller++)
+				futures.add(callers.submit(() -> generator.generate(Arrays.asList("A", "B", "C", "D", "E"))));
+			for(Future<List<ReportCard>> future : futures)
+				assertEquals(5, future.get().size());
+		} finally {
+			callers.shutdown();
+		}
+
+		assertEquals(20, store.lookups.get());
+		assertTrue("max concurrent lookups " + store.maxActive.get(), store.maxActive.get() <= 2);
+	}
+
+	@Test
+	public void failedLookupFailsTheWholeRoster() {
+		store.failOn = "Family4";
+		generator = new ReportCardGenerator(new GradesBean(store), 2, 2);
+
+		assertNull(generator.generate(Arrays.asList("Family1", "Family2", "Family3", "Family4", "Family5")));
+	}
+
+	@Test
+	public void generateFailsOnceShutDown() {
+		generator = new ReportCardGenerator(new GradesBean(store));
+		generator.shutdown();
+
+		assertNull(generator.generate(Arrays.asList("Smith")));
+	}
+
+	//A test taken in February 2017
+	private static StudentTest test(String firstName, String lastName, String score, int day) {
+		Calendar date = Calendar.getInstance();
+		date.clear();
+		date.set(2017, Calendar.FEBRUARY, day);
+		return new StudentTest(firstName, lastName, new BigDecimal(score), date);
+	}
+
+	/**
+	 * Gives every student one test and keeps track of how many batch lookups
+	 * are running at the same time.
+	 */
+	private static class CountingGradeStore implements GradeStore {
+		final AtomicInteger lookups = new AtomicInteger();
+		final AtomicInteger active = new AtomicInteger();
+		final AtomicInteger maxActive = new AtomicInteger();
+		volatile long delayMillis;
+		volatile String failOn;
+		//Tests to hand back for a name instead of the usual single one
+		final Map<String, List<StudentTest>> testsByName = new ConcurrentHashMap<String, List<StudentTest>>();
+
+		@Override
+		public Map<String, List<StudentTest>> queryTestRecords(Collection<String> lastNames) {
+			lookups.incrementAndGet();
+			int now = active.incrementAndGet();
+			maxActive.accumulateAndGet(now, Math::max);
+			try {
+				Thread.sleep(delayMillis);
+				if(lastNames.contains(failOn))
+					return null;
+
+				Map<String, List<StudentTest>> results = new LinkedHashMap<String, List<StudentTest>>();
+				for(String lastName : lastNames)
+					results.put(lastName, queryTestRecords(lastName));
+				return results;
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return null;
+			} finally {
+				active.decrementAndGet();
+			}
+		}
+
+		@Override
+		public List<StudentTest> queryTestRecords(String lastName) {
+			if(testsByName.containsKey(lastName))
+				return testsByName.get(lastName);
+			List<StudentTest> tests = new ArrayList<StudentTest>();
+			tests.add(test("Ann", lastName, "10", 11));
+			return tests;
+		}
+
+		@Override
+		public boolean createTestRecord(String firstName, String lastName, BigDecimal score, Calendar testDate) {
+			return true;
+		}
+
+		@Override
+		public List<StudentTest> queryTestRecords(Calendar testDate) {
+			return new ArrayList<StudentTest>();
+		}
+
+		@Override
+		public List<StudentTest> queryTestRecords(BigDecimal minScore, BigDecimal maxScore) {
+			return new ArrayList<StudentTest>();
+		}
+
+		@Override
+		public boolean updateTestRecords(String lastName, Calendar testDate, BigDecimal score) {
+			return true;
+		}
+
+		@Override
+		public boolean deleteTestRecordsByLastName(String lastName) {
+			return true;
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+}
@@ -0,0 +1,100 @@
+package net.shazam.reports;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+
+import org.junit.Test;
+
+import net.shazam.entities.StudentTest;
+
+/**
+ * Tests for the numbers on a report card.
+ * @author alexdrawbond
+ *
+ */
+public class ReportCardTest {
+
+	@Test
+	public void averageIsRoundedHalfUpToTwoPlaces() {
+		ReportCard reportCard = new ReportCard("Smith", Arrays.asList(
+				test("Ann", "90", 2017, 2, 11),
+				test("Ann", "85.01", 2017, 2, 12)));
+
+		assertEquals(new BigDecimal("87.51"), reportCard.getAverageScore());
+	}
+
+	@Test
+	public void averageOfARepeatingFractionIsCutToTwoPlaces() {
+		ReportCard reportCard = new ReportCard("Smith", Arrays.asList(
+				test("Ann", "70", 2017, 2, 11),
+				test("Ann", "80", 2017, 2, 12),
+				test("Ann", "85", 2017, 2, 13)));
+
+		assertEquals(new BigDecimal("78.33"), reportCard.getAverageScore());
+		assertEquals(0, new BigDecimal("70").compareTo(reportCard.getLowestScore()));
+		assertEquals(0, new BigDecimal("85").compareTo(reportCard.getHighestScore()));
+	}
+
+	@Test
+	public void latestTestGivesTheLatestScoreAndFirstName() {
+		ReportCard reportCard = new ReportCard("Smith", Arrays.asList(
+				test("Ann", "60", 2017, 3, 1),
+				test("ann", "95", 2017, 1, 5),
+				test("ann", "70", 2017, 2, 11)));
+
+		assertEquals("Ann", reportCard.getFirstName());
+		assertEquals(0, new BigDecimal("60").compareTo(reportCard.getLatestScore()));
+		assertEquals(Calendar.MARCH, reportCard.getLatestTestDate().get(Calendar.MONTH));
+	}
+
+	@Test
+	public void testsWithoutAScoreOrDateAreCountedButLeftOutOfTheNumbers() {
+		ReportCard reportCard = new ReportCard("Smith", Arrays.asList(
+				test("Ann", "80", 2017, 2, 11),
+				new StudentTest("Ann", "Smith", null, date(2017, 3, 1)),
+				new StudentTest("Ann", "Smith", new BigDecimal("10"), null)));
+
+		assertEquals(3, reportCard.getTestCount());
+		assertEquals(new BigDecimal("80.00"), reportCard.getAverageScore());
+		assertEquals(0, new BigDecimal("80").compareTo(reportCard.getLowestScore()));
+		assertEquals(Calendar.FEBRUARY, reportCard.getLatestTestDate().get(Calendar.MONTH));
+	}
+
+	@Test
+	public void studentWithOnlyUnscoredTestsStillHasAName() {
+		ReportCard reportCard = new ReportCard("Smith", Arrays.asList(new StudentTest("Ann", "Smith", null, date(2017, 3, 1))));
+
+		assertEquals("Ann", reportCard.getFirstName());
+		assertEquals(1, reportCard.getTestCount());
+		assertNull(reportCard.getAverageScore());
+	}
+
+	@Test
+	public void studentWithoutTestsHasNoNumbers() {
+		ReportCard reportCard = new ReportCard("Smith", new ArrayList<StudentTest>());
+
+		assertEquals("Smith", reportCard.getLastName());
+		assertEquals(0, reportCard.getTestCount());
+		assertNull(reportCard.getFirstName());
+		assertNull(reportCard.getAverageScore());
+		assertNull(reportCard.getLowestScore());
+		assertNull(reportCard.getLatestTestDate());
+		assertEquals("Smith: no scored tests", reportCard.toString());
+	}
+
+	private static StudentTest test(String firstName, String score, int year, int month, int day) {
+		return new StudentTest(firstName, "Smith", new BigDecimal(score), date(year, month, day));
+	}
+
+	private static Calendar date(int year, int month, int day) {
+		Calendar date = Calendar.getInstance();
+		date.clear();
+		date.set(year, month - 1, day);
+		return date;
+	}
+}
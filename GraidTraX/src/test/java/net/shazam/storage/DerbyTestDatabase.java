@@ -0,0 +1,45 @@
+package net.shazam.storage;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+
+/**
+ * Sets up the in-memory Derby database behind the "GraidTraXTestDB" persistence
+ * unit. The STUDENT_TESTS table is created the same way the README creates it in
+ * MySQL, since Hibernate can't generate an identity column for our String id.
+ * @author alexdrawbond
+ *
+ */
+public final class DerbyTestDatabase {
+	public static final String PERSISTENCE_UNIT = "GraidTraXTestDB";
+	private static final String URL = "jdbc:derby:memory:graidtrax;create=true";
+
+	private DerbyTestDatabase() {
+	}
+
+	/**
+	 * Drops and recreates an empty STUDENT_TESTS table, then opens a factory on it.
+	 * @return a factory for the test persistence unit
+	 * @throws SQLException if the table can't be created
+	 */
+	public static EntityManagerFactory createEntityManagerFactory() throws SQLException {
+		try(Connection connection = DriverManager.getConnection(URL);
+				Statement statement = connection.createStatement()) {
+			try {
+				statement.execute("DROP TABLE SHAZAM.STUDENT_TESTS");
+			} catch(SQLException e) {
+				//First run, nothing to drop yet
+				statement.execute("CREATE SCHEMA SHAZAM");
+			}
+			statement.execute("CREATE TABLE SHAZAM.STUDENT_TESTS(ID INT NOT NULL GENERATED BY DEFAULT AS IDENTITY, "
+					+ "FIRST_NAME VARCHAR(20), LAST_NAME VARCHAR(20), LAST_NAME_KEY VARCHAR(20), TEST_DATE DATE, SCORE DECIMAL(5,2), PRIMARY KEY(ID))");
+			statement.execute("CREATE INDEX SHAZAM.STUDENT_TESTS_LAST_NAME_KEY ON SHAZAM.STUDENT_TESTS(LAST_NAME_KEY)");
+		}
+		return Persistence.createEntityManagerFactory(PERSISTENCE_UNIT);
+	}
+}
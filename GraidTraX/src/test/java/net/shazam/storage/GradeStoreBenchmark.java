@@ -0,0 +1,129 @@
+package net.shazam.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.util.Calendar;
+import java.util.Random;
+
+/**
+ * Times the same workload against each backend: loading a school's worth of tests,
+ * then lookups by last name, date and score, updates and deletes. It is a plain
+ * program rather than a test so it stays out of the regular build; run it with
+ * the test classpath and compare the numbers it prints.
+ *
+ * The JPA backend runs against in-memory Derby here, with no network hop, so
+ * against MySQL it can only be slower than what is printed.
+ * @author alexdrawbond
+ *
+ */
+public class GradeStoreBenchmark {
+	private static final int STUDENTS = 1000;
+	private static final int TESTS_PER_STUDENT = 20;
+	private static final int NAME_LOOKUPS = 2000;
+	private static final int DATE_LOOKUPS = 100;
+	private static final int SCORE_LOOKUPS = 100;
+	private static final int UPDATES = 1000;
+	private static final int DELETES = 100;
+
+	private interface StoreFactory {
+		GradeStore open() throws Exception;
+	}
+
+	public static void main(String[] args) throws Exception {
+		File directory = Files.createTempDirectory("graidtrax-benchmark").toFile();
+
+		run("jpa (derby in-memory)", () -> new JpaGradeStore(DerbyTestDatabase.createEntityManagerFactory()));
+		run("embedded (sync writes)", () -> new LogStructuredGradeStore(freshFile(directory, "sync.db"), true));
+		run("embedded (no sync)", () -> new LogStructuredGradeStore(freshFile(directory, "nosync.db"), false));
+	}
+
+	private static void run(String name, StoreFactory factory) throws Exception {
+		//A first pass to warm up the JIT and connection, then the pass we report
+		GradeStore store = factory.open();
+		try {
+			workload(store, null);
+		} finally {
+			store.close();
+		}
+
+		store = factory.open();
+		try {
+			System.out.println(name);
+			workload(store, name);
+		} finally {
+			store.close();
+		}
+	}
+
+	private static void workload(GradeStore store, String name) {
+		Random random = new Random(42);
+		long start;
+
+		start = System.nanoTime();
+		for(int student = 0; student < STUDENTS; student++) {
+			for(int test = 0; test < TESTS_PER_STUDENT; test++)
+				store.createTestRecord("First" + student, lastName(student), score(random), date(test));
+		}
+		report(name, "create", STUDENTS * TESTS_PER_STUDENT, start);
+
+		start = System.nanoTime();
+		for(int i = 0; i < NAME_LOOKUPS; i++)
+			store.queryTestRecords(lastName(random.nextInt(STUDENTS)));
+		report(name, "query by last name", NAME_LOOKUPS, start);
+
+		start = System.nanoTime();
+		for(int i = 0; i < DATE_LOOKUPS; i++)
+			store.queryTestRecords(date(TESTS_PER_STUDENT - 1 - random.nextInt(3)));
+		report(name, "query by date", DATE_LOOKUPS, start);
+
+		start = System.nanoTime();
+		for(int i = 0; i < SCORE_LOOKUPS; i++) {
+			BigDecimal min = new BigDecimal(random.nextInt(95));
+			store.queryTestRecords(min, min.add(new BigDecimal("5")));
+		}
+		report(name, "query by score", SCORE_LOOKUPS, start);
+
+		start = System.nanoTime();
+		for(int i = 0; i < UPDATES; i++)
+			store.updateTestRecords(lastName(random.nextInt(STUDENTS)), date(random.nextInt(TESTS_PER_STUDENT)), score(random));
+		report(name, "update", UPDATES, start);
+
+		start = System.nanoTime();
+		for(int i = 0; i < DELETES; i++)
+			store.deleteTestRecordsByLastName(lastName(i));
+		report(name, "delete", DELETES, start);
+	}
+
+	private static void report(String name, String operation, int count, long start) {
+		//Warm-up pass
+		if(name == null)
+			return;
+		double millis = (System.nanoTime() - start) / 1e6;
+		System.out.println(String.format("  %-20s %7d ops %10.1f ms %12.0f ops/s", operation, count, millis, count / (millis / 1000)));
+	}
+
+	private static String lastName(int student) {
+		return "Student" + student;
+	}
+
+	private static BigDecimal score(Random random) {
+		return new BigDecimal(random.nextInt(10001)).movePointLeft(2);
+	}
+
+	//One test a week through the year
+	private static Calendar date(int test) {
+		Calendar date = Calendar.getInstance();
+		date.clear();
+		date.set(2017, Calendar.JANUARY, 2);
+		date.add(Calendar.DATE, test * 7);
+		return date;
+	}
+
+	private static File freshFile(File directory, String name) throws IOException {
+		File file = new File(directory, name);
+		Files.deleteIfExists(file.toPath());
+		return file;
+	}
+}
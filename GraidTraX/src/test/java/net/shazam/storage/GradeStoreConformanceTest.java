@@ -0,0 +1,320 @@
+package net.shazam.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.shazam.entities.StudentTest;
+
+/**
+ * Behaviour every {@code GradeStore} has to share. Each backend gets a subclass
+ * that only knows how to open an empty store, so the JPA and embedded backends
+ * are held to exactly the same tests.
+ * @author alexdrawbond
+ *
+ */
+public abstract class GradeStoreConformanceTest {
+	protected GradeStore store;
+
+	/**
+	 * @return a new, empty store
+	 * @throws Exception if the store can't be opened
+	 */
+	protected abstract GradeStore openStore() throws Exception;
+
+	@Before
+	public void setUp() throws Exception {
+		store = openStore();
+	}
+
+	@After
+	public void tearDown() {
+		store.close();
+	}
+
+	@Test
+	public void createdRecordIsFoundByLastName() {
+		assertTrue(store.createTestRecord("Ann", "Smith", new BigDecimal("91.5"), date(2017, 2, 11)));
+
+		List<StudentTest> tests = store.queryTestRecords("Smith");
+		assertEquals(1, tests.size());
+		StudentTest test = tests.get(0);
+		assertEquals("Ann", test.getFirstName());
+		assertEquals("Smith", test.getLastName());
+		assertEquals(0, new BigDecimal("91.5").compareTo(test.getScore()));
+		assertEquals("2/11/2017", formatDate(test.getTestDate()));
+		assertTrue(test.getId() != null);
+	}
+
+	@Test
+	public void unknownLastNameFindsNothing() {
+		store.createTestRecord("Ann", "Smith", BigDecimal.TEN, date(2017, 2, 11));
+
+		assertTrue(store.queryTestRecords("Jones").isEmpty());
+	}
+
+	@Test
+	public void lastNamesMatchIgnoringCaseAndTrailingSpaces() {
+		store.createTestRecord("Ann", "Smith", BigDecimal.ONE, date(2017, 2, 11));
+		store.createTestRecord("Bo", "smith", BigDecimal.ONE, date(2017, 2, 12));
+		store.createTestRecord("Cy", "SMITH ", BigDecimal.ONE, date(2017, 2, 13));
+		store.createTestRecord("Di", "Smithers", BigDecimal.ONE, date(2017, 2, 14));
+
+		assertEquals(list("Ann", "Bo", "Cy"), firstNames(store.queryTestRecords("Smith")));
+		assertEquals(list("Ann", "Bo", "Cy"), firstNames(store.queryTestRecords("sMiTh  ")));
+	}
+
+	@Test
+	public void nullLastNameMatchesNothing() {
+		store.createTestRecord("Ann", "Smith", BigDecimal.ONE, date(2017, 2, 11));
+
+		assertTrue(store.queryTestRecords((String) null).isEmpty());
+	}
+
+	@Test
+	public void testsWithoutAScoreOrDateAreKept() {
+		assertTrue(store.createTestRecord("Ann", "Smith", null, date(2017, 2, 11)));
+		assertTrue(store.createTestRecord("Bo", "Smith", new BigDecimal("80"), null));
+
+		List<StudentTest> tests = store.queryTestRecords("Smith");
+		assertEquals(list("Ann", "Bo"), firstNames(tests));
+		for(StudentTest test : tests) {
+			if(test.getFirstName().equals("Ann")) {
+				assertEquals(null, test.getScore());
+				assertEquals("2/11/2017", formatDate(test.getTestDate()));
+			} else {
+				assertEquals(0, new BigDecimal("80").compareTo(test.getScore()));
+				assertEquals(null, test.getTestDate());
+			}
+		}
+
+		//Like SQL, a missing value never matches a comparison
+		assertEquals(list("Ann"), firstNames(store.queryTestRecords(date(2000, 1, 1))));
+		assertEquals(list("Bo"), firstNames(store.queryTestRecords(BigDecimal.ZERO, new BigDecimal("100"))));
+		assertFalse(store.updateTestRecords("Smith", null, BigDecimal.TEN));
+		assertTrue(store.updateTestRecords("Smith", date(2017, 2, 11), BigDecimal.TEN));
+		assertEquals(list("Ann"), firstNames(store.queryTestRecords(BigDecimal.TEN, BigDecimal.TEN)));
+	}
+
+	@Test
+	public void queryByDateReturnsTestsOnOrAfterTheDay() {
+		store.createTestRecord("Ann", "Smith", BigDecimal.ONE, date(2017, 2, 10));
+		store.createTestRecord("Bo", "Smith", BigDecimal.ONE, date(2017, 2, 11));
+		store.createTestRecord("Cy", "Smith", BigDecimal.ONE, date(2017, 3, 1));
+
+		//The time of day on the date we search with doesn't matter, tests are stored by day
+		Calendar lateInTheDay = date(2017, 2, 11);
+		lateInTheDay.set(Calendar.HOUR_OF_DAY, 23);
+		assertEquals(list("Bo", "Cy"), firstNames(store.queryTestRecords(lateInTheDay)));
+	}
+
+	@Test
+	public void queryByScoreIncludesBothEnds() {
+		store.createTestRecord("Ann", "Smith", new BigDecimal("59.99"), date(2017, 2, 11));
+		store.createTestRecord("Bo", "Smith", new BigDecimal("60"), date(2017, 2, 11));
+		store.createTestRecord("Cy", "Smith", new BigDecimal("75.5"), date(2017, 2, 11));
+		store.createTestRecord("Di", "Smith", new BigDecimal("90.00"), date(2017, 2, 11));
+		store.createTestRecord("Ed", "Smith", new BigDecimal("90.01"), date(2017, 2, 11));
+
+		assertEquals(list("Bo", "Cy", "Di"), firstNames(store.queryTestRecords(new BigDecimal("60"), new BigDecimal("90"))));
+	}
+
+	@Test
+	public void queryByScoreWithMinAboveMaxFindsNothing() {
+		store.createTestRecord("Ann", "Smith", new BigDecimal("75"), date(2017, 2, 11));
+
+		assertTrue(store.queryTestRecords(new BigDecimal("90"), new BigDecimal("60")).isEmpty());
+	}
+
+	@Test
+	public void batchLookupGroupsByNameInTheOrderGiven() {
+		store.createTestRecord("Ann", "Smith", BigDecimal.ONE, date(2017, 2, 11));
+		store.createTestRecord("Bo", "Smith", BigDecimal.ONE, date(2017, 2, 12));
+		store.createTestRecord("Cy", "Jones", BigDecimal.ONE, date(2017, 2, 11));
+
+		Map<String, List<StudentTest>> results = store.queryTestRecords(Arrays.asList("Jones", "Brown", null, "Smith", "Jones"));
+
+		assertEquals(list("Jones", "Brown", "Smith"), new ArrayList<String>(results.keySet()));
+		assertEquals(list("Cy"), firstNames(results.get("Jones")));
+		assertTrue(results.get("Brown").isEmpty());
+		assertEquals(list("Ann", "Bo"), firstNames(results.get("Smith")));
+	}
+
+	@Test
+	public void batchLookupMatchesNamesLikeASingleLookup() {
+		store.createTestRecord("Ann", "Smith", BigDecimal.ONE, date(2017, 2, 11));
+		store.createTestRecord("Bo", "smith", BigDecimal.ONE, date(2017, 2, 12));
+		store.createTestRecord("Cy", "SMITH ", BigDecimal.ONE, date(2017, 2, 13));
+		store.createTestRecord("Di", "Smithers", BigDecimal.ONE, date(2017, 2, 14));
+
+		Map<String, List<StudentTest>> results = store.queryTestRecords(Arrays.asList("Smith", "sMiTh  ", "smithers"));
+
+		assertEquals(firstNames(store.queryTestRecords("Smith")), firstNames(results.get("Smith")));
+		assertEquals(list("Ann", "Bo", "Cy"), firstNames(results.get("Smith")));
+		assertEquals(list("Ann", "Bo", "Cy"), firstNames(results.get("sMiTh  ")));
+		assertEquals(list("Di"), firstNames(results.get("smithers")));
+	}
+
+	@Test
+	public void batchLookupOfManyStudents() {
+		//More names than go in one IN list
+		List<String> lastNames = new ArrayList<String>();
+		for(int i = 0; i < 1100; i++) {
+			store.createTestRecord("Student" + i, "Family" + i, BigDecimal.ONE, date(2017, 2, 11));
+			lastNames.add("Family" + i);
+		}
+
+		Map<String, List<StudentTest>> results = store.queryTestRecords(lastNames);
+
+		assertEquals(lastNames, new ArrayList<String>(results.keySet()));
+		for(int i = 0; i < 1100; i++)
+			assertEquals(list("Student" + i), firstNames(results.get("Family" + i)));
+	}
+
+	@Test
+	public void streamingFindsWhatQueryingFinds() {
+		store.createTestRecord("Ann", "Smith", new BigDecimal("60"), date(2017, 2, 10));
+		store.createTestRecord("Bo", "smith ", new BigDecimal("75"), date(2017, 2, 11));
+		store.createTestRecord("Cy", "Jones", new BigDecimal("90"), date(2017, 3, 1));
+
+		assertEquals(firstNames(store.queryTestRecords("Smith")), firstNames(stream(consumer -> store.streamTestRecords("Smith", consumer))));
+		assertEquals(firstNames(store.queryTestRecords(date(2017, 2, 11))),
+				firstNames(stream(consumer -> store.streamTestRecords(date(2017, 2, 11), consumer))));
+		assertEquals(firstNames(store.queryTestRecords(new BigDecimal("70"), new BigDecimal("90"))),
+				firstNames(stream(consumer -> store.streamTestRecords(new BigDecimal("70"), new BigDecimal("90"), consumer))));
+		assertTrue(stream(consumer -> store.streamTestRecords("Brown", consumer)).isEmpty());
+	}
+
+	@Test
+	public void streamingHandsOverEveryRecordExactlyOnce() {
+		//More than one page or batch for every backend
+		for(int i = 0; i < 1100; i++)
+			store.createTestRecord("Student" + i, "Smith", BigDecimal.ONE, date(2017, 2, 11));
+
+		List<StudentTest> streamed = stream(consumer -> store.streamTestRecords("Smith", consumer));
+
+		assertEquals(1100, streamed.size());
+		Set<String> ids = new HashSet<String>();
+		for(StudentTest test : streamed)
+			ids.add(test.getId());
+		assertEquals(1100, ids.size());
+	}
+
+	@Test
+	public void streamingByDateAndScoreCrossesPages() {
+		for(int i = 0; i < 1100; i++)
+			store.createTestRecord("Student" + i, "Smith", BigDecimal.ONE, date(2017, 2, 11));
+
+		assertEquals(1100, stream(consumer -> store.streamTestRecords(date(2017, 2, 1), consumer)).size());
+		assertEquals(1100, stream(consumer -> store.streamTestRecords(BigDecimal.ZERO, BigDecimal.TEN, consumer)).size());
+	}
+
+	@Test
+	public void streamingDoesNotSkipRecordsWhenOthersAreDeletedAlongTheWay() {
+		for(int i = 0; i < 1100; i++)
+			store.createTestRecord("Student" + i, i % 2 == 0 ? "Keep" : "Drop", BigDecimal.ONE, date(2017, 2, 11));
+
+		List<StudentTest> streamed = new ArrayList<StudentTest>();
+		store.streamTestRecords(BigDecimal.ONE, BigDecimal.ONE, test -> {
+			//Pull half the records out from under the stream as soon as it starts
+			if(streamed.isEmpty())
+				assertTrue(store.deleteTestRecordsByLastName("Drop"));
+			streamed.add(test);
+		});
+
+		Set<String> kept = new HashSet<String>();
+		for(StudentTest test : streamed) {
+			if(test.getLastName().equals("Keep"))
+				assertTrue("streamed twice: " + test.getFirstName(), kept.add(test.getFirstName()));
+		}
+		assertEquals(550, kept.size());
+	}
+
+	@Test
+	public void updateChangesOnlyTheTestOnThatDay() {
+		store.createTestRecord("Ann", "Smith", new BigDecimal("70"), date(2017, 2, 11));
+		store.createTestRecord("Ann", "Smith", new BigDecimal("80"), date(2017, 2, 12));
+
+		assertTrue(store.updateTestRecords("SMITH", date(2017, 2, 11), new BigDecimal("95")));
+
+		List<StudentTest> updated = store.queryTestRecords(new BigDecimal("95"), new BigDecimal("95"));
+		assertEquals(1, updated.size());
+		assertEquals("2/11/2017", formatDate(updated.get(0).getTestDate()));
+		assertEquals(1, store.queryTestRecords(new BigDecimal("80"), new BigDecimal("80")).size());
+		assertTrue(store.queryTestRecords(new BigDecimal("70"), new BigDecimal("70")).isEmpty());
+	}
+
+	@Test
+	public void updateWithNoMatchReturnsFalse() {
+		store.createTestRecord("Ann", "Smith", new BigDecimal("70"), date(2017, 2, 11));
+
+		assertFalse(store.updateTestRecords("Smith", date(2017, 2, 12), new BigDecimal("95")));
+		assertFalse(store.updateTestRecords("Jones", date(2017, 2, 11), new BigDecimal("95")));
+	}
+
+	@Test
+	public void deleteRemovesEveryTestForTheStudent() {
+		store.createTestRecord("Ann", "Smith", BigDecimal.ONE, date(2017, 2, 11));
+		store.createTestRecord("Ann", "smith", BigDecimal.ONE, date(2017, 2, 12));
+		store.createTestRecord("Bo", "Jones", BigDecimal.ONE, date(2017, 2, 11));
+
+		assertTrue(store.deleteTestRecordsByLastName("Smith"));
+
+		assertTrue(store.queryTestRecords("Smith").isEmpty());
+		assertEquals(list("Bo"), firstNames(store.queryTestRecords(BigDecimal.ZERO, BigDecimal.TEN)));
+	}
+
+	@Test
+	public void deleteWithNoMatchSucceeds() {
+		assertTrue(store.deleteTestRecordsByLastName("Jones"));
+	}
+
+	/**
+	 * @return a date with a time of day set, like the console client produces
+	 */
+	protected static Calendar date(int year, int month, int day) {
+		Calendar date = Calendar.getInstance();
+		date.set(year, month - 1, day, 13, 45, 30);
+		return date;
+	}
+
+	private static List<StudentTest> stream(Consumer<Consumer<StudentTest>> streamer) {
+		List<StudentTest> tests = new ArrayList<StudentTest>();
+		streamer.accept(tests::add);
+		return tests;
+	}
+
+	protected static String formatDate(Calendar date) {
+		return (date.get(Calendar.MONTH) + 1) + "/" + date.get(Calendar.DATE) + "/" + date.get(Calendar.YEAR);
+	}
+
+	//Stores don't promise any order, so compare sorted first names
+	protected static List<String> firstNames(List<StudentTest> tests) {
+		List<String> firstNames = new ArrayList<String>();
+		for(StudentTest test : tests)
+			firstNames.add(test.getFirstName());
+		Collections.sort(firstNames);
+		return firstNames;
+	}
+
+	protected static List<String> list(String... values) {
+		List<String> list = new ArrayList<String>();
+		Collections.addAll(list, values);
+		return list;
+	}
+}
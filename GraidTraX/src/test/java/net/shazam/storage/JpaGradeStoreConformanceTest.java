@@ -0,0 +1,14 @@
+package net.shazam.storage;
+
+/**
+ * Runs the conformance tests against the JPA backend on an in-memory Derby database.
+ * @author alexdrawbond
+ *
+ */
+public class JpaGradeStoreConformanceTest extends GradeStoreConformanceTest {
+
+	@Override
+	protected GradeStore openStore() throws Exception {
+		return new JpaGradeStore(DerbyTestDatabase.createEntityManagerFactory());
+	}
+}
@@ -0,0 +1,19 @@
+package net.shazam.storage;
+
+import org.junit.Rule;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Runs the conformance tests against the embedded backend.
+ * @author alexdrawbond
+ *
+ */
+public class LogStructuredGradeStoreConformanceTest extends GradeStoreConformanceTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Override
+	protected GradeStore openStore() throws Exception {
+		return new LogStructuredGradeStore(folder.newFile("grades.db"));
+	}
+}
@@ -0,0 +1,245 @@
+package net.shazam.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import net.shazam.entities.StudentTest;
+
+/**
+ * Tests for what only the embedded backend does: replaying, repairing and
+ * compacting its log file.
+ * @author alexdrawbond
+ *
+ */
+public class LogStructuredGradeStoreTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File file;
+	private LogStructuredGradeStore store;
+
+	@Before
+	public void setUp() throws IOException {
+		file = new File(folder.getRoot(), "grades.db");
+		store = new LogStructuredGradeStore(file);
+	}
+
+	@After
+	public void tearDown() {
+		store.close();
+	}
+
+	@Test
+	public void changesSurviveReopening() throws IOException {
+		store.createTestRecord("Ann", "Smith", new BigDecimal("70"), date(2017, 2, 11));
+		store.createTestRecord("Bo", "Jones", new BigDecimal("80"), date(2017, 2, 11));
+		store.updateTestRecords("Smith", date(2017, 2, 11), new BigDecimal("75"));
+		store.deleteTestRecordsByLastName("Jones");
+
+		reopen();
+
+		List<StudentTest> tests = store.queryTestRecords(BigDecimal.ZERO, new BigDecimal("100"));
+		assertEquals(1, tests.size());
+		assertEquals("Smith", tests.get(0).getLastName());
+		assertEquals(0, new BigDecimal("75").compareTo(tests.get(0).getScore()));
+	}
+
+	@Test
+	public void missingScoresAndDatesSurviveReopening() throws IOException {
+		store.createTestRecord(null, "Smith", null, null);
+
+		reopen();
+
+		List<StudentTest> tests = store.queryTestRecords("Smith");
+		assertEquals(1, tests.size());
+		assertEquals(null, tests.get(0).getFirstName());
+		assertEquals(null, tests.get(0).getScore());
+		assertEquals(null, tests.get(0).getTestDate());
+	}
+
+	@Test
+	public void idsKeepGoingUpAfterReopening() throws IOException {
+		store.createTestRecord("Ann", "Smith", BigDecimal.ONE, date(2017, 2, 11));
+		String firstId = store.queryTestRecords("Smith").get(0).getId();
+
+		reopen();
+		store.createTestRecord("Bo", "Jones", BigDecimal.ONE, date(2017, 2, 11));
+
+		assertNotEquals(firstId, store.queryTestRecords("Jones").get(0).getId());
+	}
+
+	@Test
+	public void tornRecordAtTheEndIsTruncated() throws IOException {
+		store.createTestRecord("Ann", "Smith", BigDecimal.ONE, date(2017, 2, 11));
+		store.close();
+		long goodLength = file.length();
+
+		//Pretend we crashed half way through writing a record: a length promising more bytes than follow
+		try(RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.seek(goodLength);
+			raf.writeInt(40);
+			raf.writeInt(12345);
+			raf.write(new byte[] {1, 2, 3});
+		}
+
+		store = new LogStructuredGradeStore(file);
+		assertEquals(goodLength, file.length());
+		assertEquals(1, store.queryTestRecords("Smith").size());
+
+		//The log is clean again, so new records after the repair replay fine
+		store.createTestRecord("Bo", "Jones", BigDecimal.ONE, date(2017, 2, 11));
+		reopen();
+		assertEquals(1, store.queryTestRecords("Smith").size());
+		assertEquals(1, store.queryTestRecords("Jones").size());
+	}
+
+	@Test
+	public void recordWithBadChecksumAndEverythingAfterItIsDiscarded() throws IOException {
+		store.createTestRecord("Ann", "Smith", BigDecimal.ONE, date(2017, 2, 11));
+		long firstRecordEnd = file.length();
+		store.createTestRecord("Bo", "Jones", BigDecimal.ONE, date(2017, 2, 11));
+		store.createTestRecord("Cy", "Brown", BigDecimal.ONE, date(2017, 2, 11));
+		store.close();
+
+		//Flip the last byte of the second record's payload
+		try(RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.seek(firstRecordEnd);
+			long secondRecordLastByte = firstRecordEnd + 8 + raf.readInt() - 1;
+			raf.seek(secondRecordLastByte);
+			int b = raf.read();
+			raf.seek(secondRecordLastByte);
+			raf.write(b ^ 0xFF);
+		}
+
+		store = new LogStructuredGradeStore(file);
+		assertEquals(firstRecordEnd, file.length());
+		assertEquals(1, store.queryTestRecords("Smith").size());
+		assertTrue(store.queryTestRecords("Jones").isEmpty());
+		assertTrue(store.queryTestRecords("Brown").isEmpty());
+	}
+
+	@Test
+	public void compactionDropsDeadRecordsAndKeepsLiveOnes() throws IOException {
+		for(int i = 0; i < 200; i++)
+			store.createTestRecord("Student" + i, "Family" + (i % 20), new BigDecimal(i % 100), date(2017, 1 + i % 12, 1));
+		for(int i = 0; i < 10; i++)
+			store.deleteTestRecordsByLastName("Family" + i);
+		store.updateTestRecords("Family15", date(2017, 4, 1), new BigDecimal("99"));
+		List<StudentTest> before = store.queryTestRecords(BigDecimal.ZERO, new BigDecimal("100"));
+		int scoresOf99 = store.queryTestRecords(new BigDecimal("99"), new BigDecimal("99")).size();
+		long lengthBefore = file.length();
+
+		store.compact();
+
+		assertTrue(file.length() < lengthBefore / 2);
+		assertEquals(GradeStoreConformanceTest.firstNames(before),
+				GradeStoreConformanceTest.firstNames(store.queryTestRecords(BigDecimal.ZERO, new BigDecimal("100"))));
+
+		reopen();
+		assertEquals(GradeStoreConformanceTest.firstNames(before),
+				GradeStoreConformanceTest.firstNames(store.queryTestRecords(BigDecimal.ZERO, new BigDecimal("100"))));
+		assertEquals(scoresOf99, store.queryTestRecords(new BigDecimal("99"), new BigDecimal("99")).size());
+	}
+
+	@Test
+	public void writesDuringAndAfterCompactionSurviveReopening() throws Exception {
+		for(int i = 0; i < 2000; i++)
+			store.createTestRecord("Old", "Family" + (i % 10), BigDecimal.ONE, date(2017, 2, 11));
+		for(int i = 0; i < 5; i++)
+			store.deleteTestRecordsByLastName("Family" + i);
+
+		//Keep writing while the compaction runs
+		Thread writer = new Thread(() -> {
+			for(int i = 0; i < 500; i++)
+				store.createTestRecord("New" + i, "Writer", BigDecimal.TEN, date(2017, 2, 12));
+		});
+		writer.start();
+		store.compact();
+		writer.join();
+		store.createTestRecord("Last", "Writer", BigDecimal.TEN, date(2017, 2, 13));
+
+		reopen();
+		assertEquals(1000, store.queryTestRecords(BigDecimal.ONE, BigDecimal.ONE).size());
+		assertEquals(501, store.queryTestRecords("Writer").size());
+	}
+
+	@Test
+	public void leftoverCompactionFileIsThrownAway() throws IOException {
+		store.createTestRecord("Ann", "Smith", BigDecimal.ONE, date(2017, 2, 11));
+		store.close();
+		File compactFile = new File(folder.getRoot(), "grades.db.compact");
+		Files.write(compactFile.toPath(), new byte[] {9, 9, 9});
+
+		store = new LogStructuredGradeStore(file);
+
+		assertFalse(compactFile.exists());
+		assertEquals(1, store.queryTestRecords("Smith").size());
+	}
+
+	@Test
+	public void recordTooBigToRecoverIsRejected() throws IOException {
+		store.createTestRecord("Ann", "Smith", BigDecimal.ONE, date(2017, 2, 11));
+		long lengthBefore = file.length();
+		//Each name fits in a record on its own, together they don't
+		String longName = repeat('x', LogStructuredGradeStore.MAX_PAYLOAD_SIZE * 5 / 8);
+
+		assertFalse(store.createTestRecord(longName, longName, BigDecimal.ONE, date(2017, 2, 11)));
+		assertEquals(lengthBefore, file.length());
+		assertTrue(store.createTestRecord("Bo", "Jones", BigDecimal.ONE, date(2017, 2, 11)));
+
+		reopen();
+		assertEquals(1, store.queryTestRecords("Smith").size());
+		assertEquals(1, store.queryTestRecords("Jones").size());
+		assertTrue(store.queryTestRecords(longName).isEmpty());
+	}
+
+	@Test
+	public void secondStoreCannotOpenTheSameFile() {
+		try {
+			new LogStructuredGradeStore(file).close();
+			fail("Expected the log to be locked");
+		} catch(IOException e) {
+			//expected
+		}
+	}
+
+	@Test
+	public void writesFailOnceClosed() {
+		store.close();
+
+		assertFalse(store.createTestRecord("Ann", "Smith", BigDecimal.ONE, date(2017, 2, 11)));
+	}
+
+	private void reopen() throws IOException {
+		store.close();
+		store = new LogStructuredGradeStore(file);
+	}
+
+	private static Calendar date(int year, int month, int day) {
+		return GradeStoreConformanceTest.date(year, month, day);
+	}
+
+	private static String repeat(char c, int count) {
+		char[] chars = new char[count];
+		Arrays.fill(chars, c);
+		return new String(chars);
+	}
+}